@@ -0,0 +1,970 @@
+package org.imperiumlabs.geofirestore;
+
+
+// FULLY TESTED
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import org.imperiumlabs.geofirestore.listeners.EventListenerBridge;
+import org.imperiumlabs.geofirestore.listeners.GeoQueryDataEventListener;
+import org.imperiumlabs.geofirestore.listeners.GeoQueryEventListener;
+import org.imperiumlabs.geofirestore.core.GeoHash;
+import org.imperiumlabs.geofirestore.core.GeoHashQuery;
+import org.imperiumlabs.geofirestore.region.GeoRegion;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// TODO: 05/05/19 Android Studio show error for javadoc in @throws IllegalArgumentException
+/**
+ * The engine shared by the live geo queries: it listens to the ranges planned by a subclass,
+ * keeps track of the documents read and notifies the listeners about the documents entering,
+ * moving within and exiting the area of the query. The AbstractGeoQuery class is thread safe.
+ */
+public abstract class AbstractGeoQuery {
+    // The number of snapshot listeners opened for every GeoHashQuery
+    static final int LISTENERS_PER_QUERY = 1;
+
+    // Runs the delayed tasks of the queries: deferred plans and expirations of warm ranges
+    static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "GeoQuery scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static class LocationInfo {
+        final GeoPoint location;
+        final long match;
+        final boolean inGeoQuery;
+        final long geoHash;
+        final DocumentSnapshot documentSnapshot;
+
+        LocationInfo(GeoPoint location, long match, long geoHash, DocumentSnapshot documentSnapshot) {
+            this.location = location;
+            this.match = match;
+            this.inGeoQuery = match != 0;
+            this.geoHash = geoHash;
+            this.documentSnapshot = documentSnapshot;
+        }
+    }
+
+    /*
+     * A snapshot listener on a range of keys. It serves a listened range, or a part of it, and keeps the
+     * snapshots of its documents so it can serve another one once warm. Compared by identity: a range
+     * listened to again gets a new instance
+     */
+    private static class RangeListener {
+        final GeoHashQuery range;
+        ListenerRegistration registration;
+        final Map<String, DocumentSnapshot> documents = new HashMap<>();
+        boolean ready;
+        // The listened range served, null while warm
+        GeoHashQuery servedQuery;
+        long expiration;
+
+        RangeListener(GeoHashQuery range) {
+            this.range = range;
+        }
+    }
+
+    final GeoFirestore geoFirestore;
+
+    private final Map<String, LocationInfo> locationInfos = new HashMap<>();
+    private Set<GeoHashQuery> queries;
+    // The listeners serving every listened range, a single one unless pieced together from warm listeners
+    private final Map<GeoHashQuery, List<RangeListener>> rangeListeners = new HashMap<>();
+    private final Set<GeoHashQuery> outstandingQueries = new HashSet<>();
+    // The documents of every listened range, and the number of listened ranges containing every document
+    private final Map<GeoHashQuery, Set<String>> rangeDocuments = new HashMap<>();
+    private final Map<String, Integer> rangeCounts = new HashMap<>();
+    private boolean untrackedCheckScheduled;
+    // The area the current matches were evaluated for, and the cells of the ranges decoded by the key scheme
+    private GeoRegion evaluatedRegion;
+    private final Map<GeoHashQuery, double[]> rangeCells = new HashMap<>();
+    // The listeners of the recently dropped ranges, the oldest first
+    private final Set<RangeListener> warmListeners = new LinkedHashSet<>();
+    private int warmPoolSize;
+    private long warmPoolGracePeriod;
+    private boolean warmTrimScheduled;
+    private long warmPoolHits;
+    private long warmPoolMisses;
+
+    private final Set<GeoQueryDataEventListener> eventListeners = new HashSet<>();
+
+    AbstractGeoQuery(GeoFirestore geoFirestore) {
+        this.geoFirestore = geoFirestore;
+    }
+
+    /**
+     * Plans the ranges to listen to, called with the lock of this query held. It must not change the state of
+     * the query, getQueries plans the ranges without listening to them.
+     * @return The ranges covering the area of the query
+     */
+    abstract Set<GeoHashQuery> planQueries();
+
+    /**
+     * Tests whether a location is in the area of the query, called with the lock of this query held.
+     * @param location The location of a document read by the ranges
+     * @return True if the location is in the area of the query
+     */
+    abstract boolean locationIsInQuery(GeoPoint location);
+
+    /**
+     * Evaluates which parts of the area of the query contain a location, called with the lock of this query held.
+     * Subclasses with several parts, such as several circles, return a non zero value identifying them.
+     * @param location The location of a document read by the ranges
+     * @return Zero if the location is not in the area of the query, a non zero value otherwise
+     */
+    long matchOf(GeoPoint location) {
+        return this.locationIsInQuery(location) ? 1 : 0;
+    }
+
+    /**
+     * Notifies a listener that the match of a document changed, called with the lock of this query held.
+     * It's called after the entered, changed or exited events of the document, and for every document
+     * in the query when a listener is added. Does nothing by default.
+     * @param listener The listener to notify
+     * @param documentSnapshot The snapshot of the document
+     * @param location The location of the document
+     * @param oldMatch The previous match of the document, zero if it wasn't in the query
+     * @param newMatch The current match of the document, zero if it isn't in the query anymore
+     */
+    void raiseMatchChanged(GeoQueryDataEventListener listener, DocumentSnapshot documentSnapshot,
+                           GeoPoint location, long oldMatch, long newMatch) {
+    }
+
+    /**
+     * Returns the area of the query as a region, called with the lock of this query held. When re-planning,
+     * the documents of the ranges whose cells relate the same way to the old and the new region keep their
+     * match without being evaluated again. Null, the default, evaluates every document again.
+     * @return The region whose membership is locationIsInQuery, or null
+     */
+    GeoRegion queryRegion() {
+        return null;
+    }
+
+    /**
+     * Tells whether the documents of cells inside both the old and the new region keep their match, true
+     * unless the match tells apart parts of the region. Called with the lock of this query held.
+     * @return False if such documents must be evaluated again
+     */
+    boolean insideKeepsMatch() {
+        return true;
+    }
+
+    /**
+     * Returns the current match of a document, called with the lock of this query held.
+     * @param documentID The id of the document
+     * @return The match of the document, zero if it isn't in the query
+     */
+    long currentMatch(String documentID) {
+        LocationInfo info = this.locationInfos.get(documentID);
+        return (info == null) ? 0 : info.match;
+    }
+
+    private void updateLocationInfo(final DocumentSnapshot documentSnapshot, final GeoPoint location) {
+        String documentID = documentSnapshot.getId();
+        LocationInfo oldInfo = this.locationInfos.get(documentID);
+
+        boolean isNew = oldInfo == null;
+        final boolean changedLocation = oldInfo != null && !oldInfo.location.equals(location);
+        boolean wasInQuery = oldInfo != null && oldInfo.inGeoQuery;
+        long oldMatch = (oldInfo == null) ? 0 : oldInfo.match;
+
+        long match = this.matchOf(location);
+        boolean isInQuery = match != 0;
+        if ((isNew || !wasInQuery) && isInQuery) {
+            for (final GeoQueryDataEventListener listener: this.eventListeners) {
+                this.geoFirestore.raiseEvent(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onDocumentEntered(documentSnapshot, location);
+                    }
+                });
+            }
+        } else if (!isNew && isInQuery) {
+            for (final GeoQueryDataEventListener listener: this.eventListeners) {
+                this.geoFirestore.raiseEvent(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (changedLocation) {
+                            listener.onDocumentMoved(documentSnapshot, location);
+                        }
+
+                        listener.onDocumentChanged(documentSnapshot, location);
+                    }
+                });
+            }
+        } else if (wasInQuery && !isInQuery) {
+            for (final GeoQueryDataEventListener listener: this.eventListeners) {
+                this.geoFirestore.raiseEvent(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onDocumentExited(documentSnapshot);
+                    }
+                });
+            }
+        }
+        if (match != oldMatch) {
+            for (GeoQueryDataEventListener listener: this.eventListeners) {
+                this.raiseMatchChanged(listener, documentSnapshot, location, oldMatch, match);
+            }
+        }
+        long geoHash = this.geoFirestore.getKeyScheme().encode(location.getLatitude(), location.getLongitude());
+        LocationInfo newInfo = new LocationInfo(location, match, geoHash, documentSnapshot);
+        this.locationInfos.put(documentID, newInfo);
+    }
+
+    private boolean outstandingQueriesContainGeoHash(long geoHash) {
+        for (GeoHashQuery query: this.outstandingQueries) {
+            if (query.containsGeoHash(geoHash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reset() {
+        for (List<RangeListener> listeners: this.rangeListeners.values()) {
+            for (RangeListener listener: listeners) {
+                closeListener(listener);
+            }
+        }
+
+        this.locationInfos.clear();
+        this.queries = null;
+        this.rangeListeners.clear();
+        this.outstandingQueries.clear();
+        this.rangeDocuments.clear();
+        this.rangeCounts.clear();
+        this.evaluatedRegion = null;
+        this.rangeCells.clear();
+        for (RangeListener listener: this.warmListeners) {
+            closeListener(listener);
+        }
+        this.warmListeners.clear();
+    }
+
+    boolean hasListeners() {
+        return !this.eventListeners.isEmpty();
+    }
+
+    private boolean canFireReady() {
+        return this.outstandingQueries.isEmpty();
+    }
+
+    private void checkAndFireReady() {
+        if (canFireReady()) {
+            for (final GeoQueryDataEventListener listener: this.eventListeners) {
+                this.geoFirestore.raiseEvent(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onGeoQueryReady();
+                    }
+                });
+            }
+        }
+    }
+
+    private void queryReady(GeoHashQuery query) {
+        if (this.outstandingQueries.remove(query)) {
+            // Documents left by other ranges may have been waiting for this one
+            this.scheduleUntrackedCheck();
+            this.checkAndFireReady();
+        }
+    }
+
+    private void raiseError(final Exception exception) {
+        for (final GeoQueryDataEventListener listener : this.eventListeners) {
+            this.geoFirestore.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onGeoQueryError(exception);
+                }
+            });
+        }
+    }
+
+    void setupQueries() {
+        Set<GeoHashQuery> oldQueries = (queries == null) ? new HashSet<GeoHashQuery>() : queries;
+        Set<GeoHashQuery> newQueries = this.planQueries();
+        GeoRegion oldRegion = this.evaluatedRegion;
+        GeoRegion newRegion = this.queryRegion();
+        this.queries = newQueries;
+        this.evaluatedRegion = newRegion;
+
+        // The documents whose match may have changed
+        Set<String> affectedDocuments = new HashSet<>();
+        for (GeoHashQuery query: oldQueries) {
+            if (!newQueries.contains(query)) {
+                List<RangeListener> listeners = rangeListeners.remove(query);
+                outstandingQueries.remove(query);
+                rangeCells.remove(query);
+                Set<String> documents = rangeDocuments.get(query);
+                if (documents != null) {
+                    affectedDocuments.addAll(documents);
+                }
+                if (listeners != null) {
+                    for (RangeListener listener: listeners) {
+                        dropListener(listener);
+                    }
+                }
+                untrackRange(query);
+            } else {
+                addRangeDocumentsIfMayChange(query, oldRegion, newRegion, affectedDocuments);
+            }
+        }
+        for (GeoHashQuery query: newQueries) {
+            if (!oldQueries.contains(query)) {
+                listenRange(query);
+            }
+        }
+        trimWarmListeners();
+        reevaluateLocationInfos(affectedDocuments);
+        // The documents of the dropped ranges not in a new range are removed
+        scheduleUntrackedCheck();
+
+        checkAndFireReady();
+    }
+
+    /**
+     * Tests whether ranges are inside the ranges listened to, called with the lock of this query held.
+     * @param ranges The ranges to test
+     * @return True if every key of the ranges is in a range listened to
+     */
+    boolean rangesCover(Set<GeoHashQuery> ranges) {
+        if (this.queries == null) {
+            return false;
+        }
+        for (GeoHashQuery range: ranges) {
+            if (!this.isListened(range)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isListened(GeoHashQuery range) {
+        for (GeoHashQuery query: this.queries) {
+            if (query.containsQuery(range)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates again the match of the documents after the area of the query changed while its ranges
+     * still cover it, without re-planning them. Called with the lock of this query held.
+     */
+    void refreshMatches() {
+        if (this.queries == null) {
+            return;
+        }
+        GeoRegion oldRegion = this.evaluatedRegion;
+        GeoRegion newRegion = this.queryRegion();
+        this.evaluatedRegion = newRegion;
+        Set<String> affectedDocuments = new HashSet<>();
+        for (GeoHashQuery query: this.queries) {
+            addRangeDocumentsIfMayChange(query, oldRegion, newRegion, affectedDocuments);
+        }
+        reevaluateLocationInfos(affectedDocuments);
+    }
+
+    /*
+     * Serve a new range with the warm listeners containing it or contained in it, opening listeners
+     * for the keys they leave out
+     */
+    private void listenRange(GeoHashQuery query) {
+        List<RangeListener> listeners = new ArrayList<>();
+        for (RangeListener listener: this.warmListeners) {
+            if (listener.range.containsQuery(query)) {
+                // A single listener reads every key of the range
+                listeners.add(listener);
+                break;
+            }
+        }
+        if (listeners.isEmpty()) {
+            List<RangeListener> contained = new ArrayList<>();
+            for (RangeListener listener: this.warmListeners) {
+                if (query.containsQuery(listener.range)) {
+                    contained.add(listener);
+                }
+            }
+            Collections.sort(contained, new Comparator<RangeListener>() {
+                @Override
+                public int compare(RangeListener first, RangeListener second) {
+                    return first.range.compareTo(second.range);
+                }
+            });
+            String start = query.getStartValue();
+            for (RangeListener listener: contained) {
+                // Warm listeners of different plans may overlap, the first one is kept
+                if (listener.range.getStartValue().compareTo(start) < 0) {
+                    continue;
+                }
+                if (start.compareTo(listener.range.getStartValue()) < 0) {
+                    listeners.add(openListener(new GeoHashQuery(start, listener.range.getStartValue())));
+                }
+                listeners.add(listener);
+                start = listener.range.getEndValue();
+            }
+            if (start.compareTo(query.getEndValue()) < 0) {
+                listeners.add(openListener(new GeoHashQuery(start, query.getEndValue())));
+            }
+        }
+
+        boolean ready = true;
+        for (RangeListener listener: listeners) {
+            if (this.warmListeners.remove(listener)) {
+                this.warmPoolHits++;
+            }
+            listener.servedQuery = query;
+            ready &= listener.ready;
+        }
+        this.rangeListeners.put(query, listeners);
+        if (!ready) {
+            this.outstandingQueries.add(query);
+        }
+        // The documents kept by the warm listeners are served without reading them again
+        for (RangeListener listener: listeners) {
+            for (DocumentSnapshot documentSnapshot: listener.documents.values()) {
+                if (!isInRange(documentSnapshot, query)) {
+                    continue;
+                }
+                if (this.rangeCounts.containsKey(documentSnapshot.getId())) {
+                    // Already up to date through another listened range
+                    this.trackDocument(query, documentSnapshot.getId());
+                } else {
+                    this.childAdded(query, documentSnapshot);
+                }
+            }
+        }
+    }
+
+    private RangeListener openListener(GeoHashQuery range) {
+        this.warmPoolMisses++;
+        final RangeListener listener = new RangeListener(range);
+        Query firestoreQuery = this.geoFirestore.getCollectionReference()
+                .orderBy("g").startAt(range.getStartValue()).endAt(range.getEndValue());
+        // A single listener per range dispatches every type of change
+        listener.registration = firestoreQuery.addSnapshotListener(new EventListener<QuerySnapshot>() {
+            @Override
+            public void onEvent(@Nullable QuerySnapshot queryDocumentSnapshots, @Nullable FirebaseFirestoreException e) {
+                synchronized (AbstractGeoQuery.this) {
+                    onRangeSnapshot(listener, queryDocumentSnapshots, e);
+                }
+            }
+        });
+        return listener;
+    }
+
+    private void onRangeSnapshot(RangeListener listener, QuerySnapshot querySnapshot, Exception e) {
+        // A snapshot queued before the listener was closed
+        if (listener.registration == null) {
+            return;
+        }
+        GeoHashQuery query = listener.servedQuery;
+        if (querySnapshot == null || e != null) {
+            // Firestore ends a listener after an error, a range coming back is read again
+            this.warmListeners.remove(listener);
+            closeListener(listener);
+            if (query != null) {
+                if (e != null) {
+                    raiseError(e);
+                }
+                this.dropFailedRange(query);
+            }
+            return;
+        }
+        for (DocumentChange docChange: querySnapshot.getDocumentChanges()) {
+            DocumentSnapshot documentSnapshot = docChange.getDocument();
+            String documentID = documentSnapshot.getId();
+            // The end of a Firestore query is inclusive, a key equal to it belongs to the next range
+            boolean inListener = docChange.getType() != DocumentChange.Type.REMOVED &&
+                    isInRange(documentSnapshot, listener.range);
+            DocumentSnapshot previous = inListener ? listener.documents.put(documentID, documentSnapshot) :
+                    listener.documents.remove(documentID);
+            if (query == null) {
+                continue;
+            }
+            boolean wasInQuery = previous != null && isInRange(previous, query);
+            if (inListener && isInRange(documentSnapshot, query)) {
+                if (wasInQuery) {
+                    childChanged(query, documentSnapshot);
+                } else {
+                    childAdded(query, documentSnapshot);
+                }
+            } else if (wasInQuery) {
+                childRemoved(query, documentSnapshot);
+            }
+        }
+        // The first snapshot of a listener holds all of its documents. It counts even when it comes from the
+        // local cache, so a query is ready offline; the changes read from the server follow as usual events
+        listener.ready = true;
+        if (query != null && isRangeReady(query)) {
+            queryReady(query);
+        }
+    }
+
+    /*
+     * Stop listening to a range whose listener failed, so the next plan keeping it opens a new listener.
+     * The failed range won't deliver its documents, the query is ready without them
+     */
+    private void dropFailedRange(GeoHashQuery query) {
+        Set<GeoHashQuery> queries = new HashSet<>(this.queries);
+        queries.remove(query);
+        this.queries = queries;
+        for (RangeListener listener: this.rangeListeners.remove(query)) {
+            dropListener(listener);
+        }
+        this.rangeCells.remove(query);
+        this.untrackRange(query);
+        this.queryReady(query);
+        // Its documents in no other range are removed
+        this.scheduleUntrackedCheck();
+    }
+
+    private boolean isRangeReady(GeoHashQuery query) {
+        for (RangeListener listener: this.rangeListeners.get(query)) {
+            if (!listener.ready) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInRange(DocumentSnapshot documentSnapshot, GeoHashQuery range) {
+        String key = documentSnapshot.getString("g");
+        return key != null && range.containsKey(key);
+    }
+
+    /*
+     * Keep the listener of a dropped range open with the snapshots of its documents if the pool is enabled
+     */
+    private void dropListener(RangeListener listener) {
+        listener.servedQuery = null;
+        if (this.warmPoolSize > 0 && listener.registration != null) {
+            listener.expiration = System.currentTimeMillis() + this.warmPoolGracePeriod;
+            this.warmListeners.add(listener);
+        } else {
+            closeListener(listener);
+        }
+    }
+
+    private void closeListener(RangeListener listener) {
+        if (listener.registration != null) {
+            listener.registration.remove();
+            listener.registration = null;
+        }
+    }
+
+    /*
+     * Close the warm listeners expired or beyond the size of the pool, and schedule a single pass for
+     * the next expiration
+     */
+    private void trimWarmListeners() {
+        long now = System.currentTimeMillis();
+        long nextExpiration = Long.MAX_VALUE;
+        int remaining = this.warmListeners.size();
+        Iterator<RangeListener> it = this.warmListeners.iterator();
+        while (it.hasNext()) {
+            RangeListener listener = it.next();
+            if (remaining > this.warmPoolSize || listener.expiration <= now) {
+                closeListener(listener);
+                it.remove();
+            } else {
+                nextExpiration = Math.min(nextExpiration, listener.expiration);
+            }
+            remaining--;
+        }
+        if (nextExpiration != Long.MAX_VALUE && !this.warmTrimScheduled) {
+            this.warmTrimScheduled = true;
+            SCHEDULER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (AbstractGeoQuery.this) {
+                        AbstractGeoQuery.this.warmTrimScheduled = false;
+                        AbstractGeoQuery.this.trimWarmListeners();
+                    }
+                }
+            }, nextExpiration - now, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Keeps the listeners of the ranges dropped when the area of this query changes open for a grace period,
+     * so a range listened to again within it gets its documents back without reading them again. The pool is
+     * disabled by default.
+     *
+     * @throws IllegalArgumentException If the size or the grace period is negative
+     *
+     * @param size The maximal number of dropped ranges kept open, the oldest being closed first, or 0 to disable the pool
+     * @param gracePeriod The time a dropped range is kept open, in milliseconds
+     */
+    public synchronized void setWarmPool(int size, long gracePeriod) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The size of the warm pool can't be negative!");
+        }
+        if (gracePeriod < 0) {
+            throw new IllegalArgumentException("The grace period of the warm pool can't be negative!");
+        }
+        this.warmPoolSize = size;
+        this.warmPoolGracePeriod = gracePeriod;
+        this.trimWarmListeners();
+    }
+
+    /**
+     * Returns the maximal number of dropped ranges kept open.
+     * @return The size of the warm pool, 0 if it's disabled
+     */
+    public synchronized int getWarmPoolSize() {
+        return warmPoolSize;
+    }
+
+    /**
+     * Returns the time a dropped range is kept open.
+     * @return The grace period of the warm pool, in milliseconds
+     */
+    public synchronized long getWarmPoolGracePeriod() {
+        return warmPoolGracePeriod;
+    }
+
+    /**
+     * Returns the number of listeners taken back from the warm pool, each one serving a range, or a part
+     * of it, without reading its documents again.
+     * @return The number of hits of the warm pool
+     */
+    public synchronized long getWarmPoolHits() {
+        return warmPoolHits;
+    }
+
+    /**
+     * Returns the number of listeners opened for the ranges, or the parts of them, not found in the warm pool.
+     * @return The number of misses of the warm pool
+     */
+    public synchronized long getWarmPoolMisses() {
+        return warmPoolMisses;
+    }
+
+    private void addRangeDocumentsIfMayChange(GeoHashQuery query, GeoRegion oldRegion, GeoRegion newRegion, Set<String> affectedDocuments) {
+        if (oldRegion == null || newRegion == null || rangeMayChange(query, oldRegion, newRegion)) {
+            Set<String> documents = this.rangeDocuments.get(query);
+            if (documents != null) {
+                affectedDocuments.addAll(documents);
+            }
+        }
+    }
+
+    private void reevaluateLocationInfos(Set<String> affectedDocuments) {
+        // Documents waiting for the first snapshot of a range aren't in any range
+        for (String documentID: this.locationInfos.keySet()) {
+            if (!this.rangeCounts.containsKey(documentID)) {
+                affectedDocuments.add(documentID);
+            }
+        }
+        for (String documentID: affectedDocuments) {
+            LocationInfo info = this.locationInfos.get(documentID);
+            if (info != null) {
+                reevaluateLocationInfo(documentID, info);
+            }
+        }
+    }
+
+    /*
+     * True if a cell of a kept range crosses the border of the old or the new region, or relates differently to them
+     */
+    private boolean rangeMayChange(GeoHashQuery query, GeoRegion oldRegion, GeoRegion newRegion) {
+        double[] cells = this.rangeCells.get(query);
+        if (cells == null) {
+            cells = this.geoFirestore.getKeyScheme().cellsOf(query);
+            this.rangeCells.put(query, cells);
+        }
+        for (int i = 0; i < cells.length; i += 4) {
+            double minLatitude = cells[i + GeoHash.MIN_LATITUDE];
+            double minLongitude = cells[i + GeoHash.MIN_LONGITUDE];
+            double maxLatitude = cells[i + GeoHash.MAX_LATITUDE];
+            double maxLongitude = cells[i + GeoHash.MAX_LONGITUDE];
+            GeoRegion.Relation oldRelation = oldRegion.relate(minLatitude, minLongitude, maxLatitude, maxLongitude);
+            if (oldRelation == GeoRegion.Relation.INTERSECTS ||
+                    oldRelation != newRegion.relate(minLatitude, minLongitude, maxLatitude, maxLongitude) ||
+                    (oldRelation == GeoRegion.Relation.INSIDE && !this.insideKeepsMatch())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Evaluate the match of a document that didn't move again, raising events only if it changed
+     */
+    private void reevaluateLocationInfo(String documentID, final LocationInfo info) {
+        long match = this.matchOf(info.location);
+        if (match == info.match) {
+            return;
+        }
+        if (!info.inGeoQuery) {
+            raiseDocumentEntered(info.documentSnapshot, info.location);
+        } else if (match == 0) {
+            raiseDocumentExited(info.documentSnapshot);
+        }
+        for (GeoQueryDataEventListener listener: this.eventListeners) {
+            this.raiseMatchChanged(listener, info.documentSnapshot, info.location, info.match, match);
+        }
+        this.locationInfos.put(documentID, new LocationInfo(info.location, match, info.geoHash, info.documentSnapshot));
+    }
+
+    private void raiseDocumentEntered(final DocumentSnapshot documentSnapshot, final GeoPoint location) {
+        for (final GeoQueryDataEventListener listener: this.eventListeners) {
+            this.geoFirestore.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onDocumentEntered(documentSnapshot, location);
+                }
+            });
+        }
+    }
+
+    private void raiseDocumentExited(final DocumentSnapshot documentSnapshot) {
+        for (final GeoQueryDataEventListener listener: this.eventListeners) {
+            this.geoFirestore.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onDocumentExited(documentSnapshot);
+                }
+            });
+        }
+    }
+
+    private void childAdded(GeoHashQuery query, DocumentSnapshot documentSnapshot) {
+        this.trackDocument(query, documentSnapshot.getId());
+        GeoPoint location = GeoFirestore.Companion.getLocationValue(documentSnapshot);
+        if (location != null) {
+            this.updateLocationInfo(documentSnapshot, location);
+        }
+    }
+
+    private void childChanged(GeoHashQuery query, DocumentSnapshot documentSnapshot) {
+        this.trackDocument(query, documentSnapshot.getId());
+        GeoPoint location = GeoFirestore.Companion.getLocationValue(documentSnapshot);
+        if (location != null) {
+            this.updateLocationInfo(documentSnapshot, location);
+        }
+    }
+
+    private void childRemoved(GeoHashQuery query, DocumentSnapshot documentSnapshot) {
+        if (this.untrackDocument(query, documentSnapshot.getId()) == 0) {
+            // The document may have moved to another range whose snapshot isn't delivered yet
+            this.scheduleUntrackedCheck();
+        }
+    }
+
+    private void trackDocument(GeoHashQuery query, String documentID) {
+        Set<String> documents = this.rangeDocuments.get(query);
+        if (documents == null) {
+            documents = new HashSet<>();
+            this.rangeDocuments.put(query, documents);
+        }
+        if (documents.add(documentID)) {
+            Integer count = this.rangeCounts.get(documentID);
+            this.rangeCounts.put(documentID, (count == null) ? 1 : count + 1);
+        }
+    }
+
+    /*
+     * Returns the number of listened ranges still containing the document
+     */
+    private int untrackDocument(GeoHashQuery query, String documentID) {
+        Set<String> documents = this.rangeDocuments.get(query);
+        if (documents != null && documents.remove(documentID)) {
+            return this.decrementRangeCount(documentID);
+        }
+        Integer count = this.rangeCounts.get(documentID);
+        return (count == null) ? 0 : count;
+    }
+
+    private void untrackRange(GeoHashQuery query) {
+        Set<String> documents = this.rangeDocuments.remove(query);
+        if (documents != null) {
+            for (String documentID: documents) {
+                this.decrementRangeCount(documentID);
+            }
+        }
+    }
+
+    private int decrementRangeCount(String documentID) {
+        int count = this.rangeCounts.get(documentID) - 1;
+        if (count == 0) {
+            this.rangeCounts.remove(documentID);
+        } else {
+            this.rangeCounts.put(documentID, count);
+        }
+        return count;
+    }
+
+    /*
+     * Check the documents left by every range after the snapshots already queued are delivered,
+     * so a document moving between two listened ranges doesn't exit and enter again
+     */
+    private void scheduleUntrackedCheck() {
+        if (this.untrackedCheckScheduled) {
+            return;
+        }
+        this.untrackedCheckScheduled = true;
+        this.geoFirestore.raiseEvent(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AbstractGeoQuery.this) {
+                    AbstractGeoQuery.this.untrackedCheckScheduled = false;
+                    AbstractGeoQuery.this.removeUntrackedDocuments();
+                }
+            }
+        });
+    }
+
+    /*
+     * Remove the documents in no listened range, unless a range still waiting for its first snapshot may contain them
+     */
+    private void removeUntrackedDocuments() {
+        Iterator<Map.Entry<String, LocationInfo>> it = this.locationInfos.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, LocationInfo> entry = it.next();
+            if (this.rangeCounts.containsKey(entry.getKey()) || this.outstandingQueriesContainGeoHash(entry.getValue().geoHash)) {
+                continue;
+            }
+            it.remove();
+            LocationInfo info = entry.getValue();
+            if (info.inGeoQuery) {
+                raiseDocumentExited(info.documentSnapshot);
+                for (GeoQueryDataEventListener listener: this.eventListeners) {
+                    this.raiseMatchChanged(listener, info.documentSnapshot, info.location, info.match, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a new GeoQueryEventListener to this GeoQuery.
+     *
+     * @throws IllegalArgumentException If this listener was already added
+     *
+     * @param listener The listener to add
+     */
+    public synchronized void addGeoQueryEventListener(final GeoQueryEventListener listener) {
+        addGeoQueryDataEventListener(new EventListenerBridge(listener));
+    }
+
+    /**
+     * Adds a new GeoQueryEventListener to this GeoQuery.
+     *
+     * @throws IllegalArgumentException If this listener was already added
+     *
+     * @param listener The listener to add
+     */
+    public synchronized void addGeoQueryDataEventListener(final GeoQueryDataEventListener listener) {
+        if (eventListeners.contains(listener)) {
+            throw new IllegalArgumentException("Added the same listener twice to a GeoQuery!");
+        }
+        eventListeners.add(listener);
+        if (this.queries == null) {
+            this.setupQueries();
+        } else {
+            for (final Map.Entry<String, LocationInfo> entry: this.locationInfos.entrySet()) {
+                final LocationInfo info = entry.getValue();
+
+                if (info.inGeoQuery) {
+                    this.geoFirestore.raiseEvent(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onDocumentEntered(info.documentSnapshot, info.location);
+                        }
+                    });
+                    this.raiseMatchChanged(listener, info.documentSnapshot, info.location, 0, info.match);
+                }
+            }
+            if (this.canFireReady()) {
+                this.geoFirestore.raiseEvent(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onGeoQueryReady();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Get the Firestore query(s) for this GeoQuery. Planning them doesn't change the ranges listened to.
+     *
+     * @return The Firestore query(s) for this GeoQuery
+     */
+    public synchronized ArrayList<Query> getQueries() {
+        CollectionReference collectionReference = this.geoFirestore.getCollectionReference();
+        ArrayList<Query> queries = new ArrayList<Query>();
+        for (GeoHashQuery query: this.planQueries()) {
+            queries.add(collectionReference.orderBy("g").startAt(query.getStartValue()).endAt(query.getEndValue()));
+        }
+        return queries;
+    }
+
+    /**
+     * Removes an event listener.
+     *
+     * @throws IllegalArgumentException If the listener was removed already or never added
+     *
+     * @param listener The listener to remove
+     */
+    public synchronized void removeGeoQueryEventListener(GeoQueryEventListener listener) {
+        removeGeoQueryEventListener(new EventListenerBridge(listener));
+    }
+
+    /**
+     * Removes an event listener.
+     *
+     * @throws IllegalArgumentException If the listener was removed already or never added
+     *
+     * @param listener The listener to remove
+     */
+    public synchronized void removeGeoQueryEventListener(final GeoQueryDataEventListener listener) {
+        if (!eventListeners.contains(listener)) {
+            throw new IllegalArgumentException("Trying to remove listener that was removed or not added!");
+        }
+        eventListeners.remove(listener);
+        if (!this.hasListeners()) {
+            reset();
+        }
+    }
+
+    /**
+     * Removes all event listeners from this GeoQuery.
+     */
+    public synchronized void removeAllListeners() {
+        eventListeners.clear();
+        reset();
+    }
+}
@@ -3,22 +3,38 @@ package org.imperiumlabs.geofirestore
 import com.google.android.gms.tasks.Task
 import com.google.android.gms.tasks.Tasks
 import com.google.firebase.firestore.*
-import org.imperiumlabs.geofirestore.core.GeoHash
+import org.imperiumlabs.geofirestore.core.GeoHashKeyScheme
 import org.imperiumlabs.geofirestore.core.GeoHashQuery
+import org.imperiumlabs.geofirestore.core.QueryPlan
+import org.imperiumlabs.geofirestore.core.SpatialKeyScheme
 import org.imperiumlabs.geofirestore.extension.mapNotNullManyTo
+import org.imperiumlabs.geofirestore.region.GeoAnnulus
+import org.imperiumlabs.geofirestore.region.GeoBoundingBox
+import org.imperiumlabs.geofirestore.region.GeoCircle
+import org.imperiumlabs.geofirestore.region.GeoCorridor
+import org.imperiumlabs.geofirestore.region.GeoPolygon
+import org.imperiumlabs.geofirestore.region.GeoRegion
+import org.imperiumlabs.geofirestore.util.Constants
 import org.imperiumlabs.geofirestore.util.GeoUtils
 import java.util.logging.Logger
 
 
 /**
  * A GeoFirestore instance is used to store geo location data in Firestore.
+ *
+ * The keys stored in the "g" field and the ranges queried are defined by the keyScheme,
+ * geohashes by default; every client of a collection must use the same scheme.
  */
-class GeoFirestore(val collectionReference: CollectionReference) {
+class GeoFirestore @JvmOverloads constructor(val collectionReference: CollectionReference,
+                                             val keyScheme: SpatialKeyScheme = GeoHashKeyScheme.DEFAULT) {
 
     companion object {
         @JvmField
         val LOGGER = Logger.getLogger("GeoFirestore")!!
 
+        // The default size of the cells first read by getNearest, in kilometers
+        const val DEFAULT_NEAREST_CELL_SIZE = 1.0
+
         /**
          * Build a GeoPoint from a DocumentSnapshot
          *
@@ -135,10 +151,9 @@ class GeoFirestore(val collectionReference: CollectionReference) {
         }
         //Get the DocumentReference for this documentID
         val docRef = this.getRefForDocumentID(documentID)
-        val geoHash = GeoHash(GeoLocation(location.latitude, location.longitude))
         //Create a Map with the fields to add
         val updates = HashMap<String, Any>()
-        updates["g"] = geoHash.geoHashString
+        updates["g"] = keyScheme.keyFor(location.latitude, location.longitude)
         updates["l"] = location
         //Update the DocumentReference with the location data
         docRef.set(updates, SetOptions.merge())
@@ -207,6 +222,31 @@ class GeoFirestore(val collectionReference: CollectionReference) {
      */
     fun queryAtLocation(center: GeoPoint, radius: Double) = GeoQuery(this, center, GeoUtils.capRadius(radius))
 
+    /**
+     * Returns a new GeoTieredQuery object centered at a given location with nested tiers of the given radii.
+     * Only the outermost tier is listened to, and listeners are told which tier each document is in.
+     *
+     * @param center The center of the query
+     * @param radii The radii of the tiers, in kilometers, in any order. The maximum radius that is
+     *              supported is about 8587km. If a radius bigger than this is passed we'll cap it.
+     * @return The new GeoTieredQuery object
+     * @throws IllegalArgumentException If there is no tier, or a radius isn't positive and finite or is repeated
+     */
+    fun queryInTiers(center: GeoPoint, vararg radii: Double) = GeoTieredQuery(this, center, radii)
+
+    /**
+     * Explain the covering a query at the given location and with the given radius would use,
+     * without running any query.
+     *
+     * @param center The center of the query
+     * @param radius The radius of the query, in kilometers. The maximum radius that is
+     *               supported is about 8587km. If a radius bigger than this is passed we'll cap it.
+     * @return The ranges of the covering with their read and listener estimates
+     */
+    fun explain(center: GeoPoint, radius: Double) =
+            QueryPlan(keyScheme, GeoLocation(center.latitude, center.longitude),
+                    GeoUtils.capRadius(radius) * Constants.KILOMETER_TO_METER, AbstractGeoQuery.LISTENERS_PER_QUERY)
+
     /**
      * Returns a new SingleGeoQuery object centered at a given location and with the given radius.
      *
@@ -216,16 +256,198 @@ class GeoFirestore(val collectionReference: CollectionReference) {
      * @return The new SingleGeoQuery object
      */
     fun getAtLocation(center: GeoPoint, radius: Double, callback: SingleGeoQueryDataEventCallback) {
+        // The ranges cover the circle, the documents read in their corners are filtered out
+        val circle = GeoCircle(GeoLocation(center.latitude, center.longitude), GeoUtils.capRadius(radius) * Constants.KILOMETER_TO_METER)
+        getInQueries(keyScheme.queriesAtLocation(circle.center, circle.radius), circle, callback)
+    }
+
+    /**
+     * Returns a new GeoMultiCircleQuery object in the union of the given circles. The coverings of the
+     * circles are merged so overlapping areas are read once.
+     *
+     * @param circles The circles of the query, at most 64. Their radii are in meters, GeoCircle.ofKilometers
+     *                takes kilometers; radii bigger than about 8587km are capped like those of queryAtLocation.
+     * @return The new GeoMultiCircleQuery object
+     */
+    fun queryInCircles(circles: List<GeoCircle>) = GeoMultiCircleQuery(this, circles)
+
+    /**
+     * Gets the k documents nearest to a center, sorted by increasing distance.
+     *
+     * Cells are read in rings growing outwards from the center, each cell at most once, until
+     * the next ring is farther than the k-th nearest document found so far.
+     *
+     * @param center The center of the search
+     * @param k The number of documents to get
+     * @param callback The callback receiving the k nearest documents, fewer if the collection is smaller
+     * @param cellSize The size of the first cells read, in kilometers. A size close to the distance
+     *                 of the k-th document reads the fewest documents.
+     */
+    @JvmOverloads
+    fun getNearest(center: GeoPoint, k: Int, callback: SingleGeoQueryDataEventCallback, cellSize: Double = DEFAULT_NEAREST_CELL_SIZE) {
+        val level = Math.floor(GeoHashQuery.Utils.bitsLatitude(cellSize * Constants.KILOMETER_TO_METER)).toInt()
+        NearestNeighborSearch(this, GeoLocation(center.latitude, center.longitude), k,
+                Math.max(1, Math.min(keyScheme.maxCellLevel, level)), callback).start()
+    }
+
+    /**
+     * Returns a new GeoPartitionedQuery object centered at a given location and with the given radius.
+     * Unlike queryAtLocation the radius isn't capped, a radius of half the circumference of the earth
+     * or more covers the whole earth.
+     *
+     * @param center The center of the query
+     * @param radius The radius of the query, in kilometers
+     * @return The new GeoPartitionedQuery object
+     */
+    fun partitionedQueryAtLocation(center: GeoPoint, radius: Double) =
+            partitionedQueryInRegion(GeoCircle(GeoLocation(center.latitude, center.longitude), radius * Constants.KILOMETER_TO_METER))
+
+    /**
+     * Returns a new GeoPartitionedQuery object in the given region, of any size.
+     *
+     * @param region The region of the query
+     * @return The new GeoPartitionedQuery object
+     */
+    fun partitionedQueryInRegion(region: GeoRegion): GeoPartitionedQuery {
+        val level = GeoHashQuery.Utils.bitsForRegion(region) / 2 + GeoPartitionedQuery.PARTITION_REFINE_LEVELS
+        return GeoPartitionedQuery(this, region, Math.max(1, Math.min(keyScheme.maxCellLevel, level)))
+    }
+
+    /**
+     * Returns a new GeoPartitionedQuery object over the whole earth.
+     *
+     * @return The new GeoPartitionedQuery object
+     */
+    fun partitionedQueryAll() = partitionedQueryInRegion(GeoBoundingBox(-90.0, -180.0, 90.0, 180.0))
+
+    /**
+     * Returns a new GeoRegionQuery object in the given region.
+     *
+     * @param region The region of the query
+     * @return The new GeoRegionQuery object
+     */
+    fun queryInRegion(region: GeoRegion) = GeoRegionQuery(this, region)
+
+    /**
+     * Returns a new GeoRegionQuery object in the bounding box between two corners.
+     * A south-west corner east of the north-east one makes a box crossing the antimeridian.
+     *
+     * @param southWest The south-west corner of the box
+     * @param northEast The north-east corner of the box
+     * @return The new GeoRegionQuery object
+     */
+    fun queryInBoundingBox(southWest: GeoPoint, northEast: GeoPoint) =
+            queryInRegion(GeoBoundingBox(southWest.latitude, southWest.longitude, northEast.latitude, northEast.longitude))
+
+    /**
+     * Returns a new GeoRegionQuery object in the polygon with the given vertices.
+     *
+     * @param vertices The vertices of the polygon, it must not cross the antimeridian
+     * @return The new GeoRegionQuery object
+     */
+    fun queryInPolygon(vertices: List<GeoPoint>) = queryInRegion(polygonOf(vertices))
+
+    /**
+     * Returns a new GeoRegionQuery object matching the documents between two distances of a center.
+     * The ranges entirely inside the inner circle are not read.
+     *
+     * @param center The center of the query
+     * @param minRadius The inner radius of the query, in kilometers
+     * @param maxRadius The outer radius of the query, in kilometers. The maximum radius that is
+     *                  supported is about 8587km. If a radius bigger than this is passed we'll cap it.
+     * @return The new GeoRegionQuery object
+     */
+    fun queryInAnnulus(center: GeoPoint, minRadius: Double, maxRadius: Double) =
+            queryInRegion(annulusOf(center, minRadius, maxRadius))
+
+    /**
+     * Returns a new GeoRegionQuery object along a route, matching the documents within the buffer
+     * distance of any of its segments.
+     *
+     * @param route The points of the route, joined by great circle segments
+     * @param buffer The distance from the route, in kilometers
+     * @return The new GeoRegionQuery object
+     */
+    fun queryAlongRoute(route: List<GeoPoint>, buffer: Double) = queryInRegion(corridorOf(route, buffer))
+
+    /**
+     * Gets the documents inside the given region.
+     *
+     * @param region The region of the query
+     * @param callback The callback receiving the documents inside the region
+     */
+    fun getInRegion(region: GeoRegion, callback: SingleGeoQueryDataEventCallback) {
+        getInQueries(keyScheme.queriesForRegion(region), region, callback)
+    }
+
+    /**
+     * Gets the documents inside the bounding box between two corners.
+     * A south-west corner east of the north-east one makes a box crossing the antimeridian.
+     *
+     * @param southWest The south-west corner of the box
+     * @param northEast The north-east corner of the box
+     * @param callback The callback receiving the documents inside the box
+     */
+    fun getInBoundingBox(southWest: GeoPoint, northEast: GeoPoint, callback: SingleGeoQueryDataEventCallback) {
+        getInRegion(GeoBoundingBox(southWest.latitude, southWest.longitude, northEast.latitude, northEast.longitude), callback)
+    }
+
+    /**
+     * Gets the documents inside the polygon with the given vertices.
+     *
+     * @param vertices The vertices of the polygon, it must not cross the antimeridian
+     * @param callback The callback receiving the documents inside the polygon
+     */
+    fun getInPolygon(vertices: List<GeoPoint>, callback: SingleGeoQueryDataEventCallback) {
+        getInRegion(polygonOf(vertices), callback)
+    }
+
+    /**
+     * Gets the documents between two distances of a center.
+     *
+     * @param center The center of the query
+     * @param minRadius The inner radius of the query, in kilometers
+     * @param maxRadius The outer radius of the query, in kilometers. The maximum radius that is
+     *                  supported is about 8587km. If a radius bigger than this is passed we'll cap it.
+     * @param callback The callback receiving the documents between the two radii
+     */
+    fun getInAnnulus(center: GeoPoint, minRadius: Double, maxRadius: Double, callback: SingleGeoQueryDataEventCallback) {
+        getInRegion(annulusOf(center, minRadius, maxRadius), callback)
+    }
+
+    /**
+     * Gets the documents within the buffer distance of a route.
+     *
+     * @param route The points of the route, joined by great circle segments
+     * @param buffer The distance from the route, in kilometers
+     * @param callback The callback receiving the documents along the route
+     */
+    fun getAlongRoute(route: List<GeoPoint>, buffer: Double, callback: SingleGeoQueryDataEventCallback) {
+        getInRegion(corridorOf(route, buffer), callback)
+    }
+
+    private fun polygonOf(vertices: List<GeoPoint>) = GeoPolygon(vertices.map { GeoLocation(it.latitude, it.longitude) })
+
+    private fun annulusOf(center: GeoPoint, minRadius: Double, maxRadius: Double) =
+            GeoAnnulus(GeoLocation(center.latitude, center.longitude), minRadius * Constants.KILOMETER_TO_METER,
+                    GeoUtils.capRadius(maxRadius) * Constants.KILOMETER_TO_METER)
+
+    private fun corridorOf(route: List<GeoPoint>, buffer: Double) =
+            GeoCorridor(route.map { GeoLocation(it.latitude, it.longitude) }, buffer * Constants.KILOMETER_TO_METER)
+
+    /*
+     * Get the documents of the given ranges, keeping only those inside the region if there's one
+     */
+    private fun getInQueries(queries: Set<GeoHashQuery>, region: GeoRegion?, callback: SingleGeoQueryDataEventCallback) {
         //Get the resultTasks from Firebase Queries generated from GeoHashQueries
         val resultTasks = arrayListOf<Task<QuerySnapshot>>().apply {
-            GeoHashQuery.queriesAtLocation(GeoLocation(center.latitude, center.longitude), radius)
-                    .forEach {
-                        this.add(this@GeoFirestore.collectionReference
-                                .orderBy("g")
-                                .startAt(it.startValue)
-                                .endAt(it.endValue)
-                                .get())
-                    }
+            queries.forEach {
+                this.add(this@GeoFirestore.collectionReference
+                        .orderBy("g")
+                        .startAt(it.startValue)
+                        .endAt(it.endValue)
+                        .get())
+            }
         }
         //Await the completion of all the resultTasks
         Tasks.whenAllComplete(resultTasks)
@@ -238,6 +460,11 @@ class GeoFirestore(val collectionReference: CollectionReference) {
                     //Data retrieved, extract it from the tasks and pass it to the listeners
                     val documentSnapshots = arrayListOf<DocumentSnapshot>()
                     tasks.mapNotNullManyTo(documentSnapshots) { (it.result as? QuerySnapshot)?.documents }
+                    if (region != null)
+                        documentSnapshots.retainAll { document ->
+                            val location = getLocationValue(document)
+                            location != null && region.contains(location.latitude, location.longitude)
+                        }
                     callback.onComplete(documentSnapshots, null)
                 }
     }
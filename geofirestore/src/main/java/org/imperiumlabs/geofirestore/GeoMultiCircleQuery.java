@@ -0,0 +1,146 @@
+package org.imperiumlabs.geofirestore;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.GeoPoint;
+
+import org.imperiumlabs.geofirestore.core.GeoHashQuery;
+import org.imperiumlabs.geofirestore.listeners.GeoQueryCirclesEventListener;
+import org.imperiumlabs.geofirestore.listeners.GeoQueryDataEventListener;
+import org.imperiumlabs.geofirestore.region.GeoCircle;
+import org.imperiumlabs.geofirestore.region.GeoRegion;
+import org.imperiumlabs.geofirestore.region.GeoUnion;
+import org.imperiumlabs.geofirestore.util.Constants;
+import org.imperiumlabs.geofirestore.util.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A GeoMultiCircleQuery object can be used for geo queries in the union of several circles. The coverings
+ * of the circles are merged into one set of ranges, so overlapping areas are read once, and every document
+ * is matched against each circle to report which ones contain it. The GeoMultiCircleQuery class is thread safe.
+ */
+public class GeoMultiCircleQuery extends AbstractGeoQuery {
+    // The circles containing a document are the bits of its match
+    private static final int MAX_CIRCLES = 64;
+
+    private List<GeoCircle> circles;
+
+    /**
+     * Creates a new GeoMultiCircleQuery object in the union of the given circles.
+     * @param geoFirestore The GeoFirestore object this GeoMultiCircleQuery uses
+     * @param circles The circles of this query, radii bigger than about 8587km being capped
+     */
+    GeoMultiCircleQuery(GeoFirestore geoFirestore, List<GeoCircle> circles) {
+        super(geoFirestore);
+        this.circles = checkCircles(circles);
+    }
+
+    private static List<GeoCircle> checkCircles(List<GeoCircle> circles) {
+        if (circles.isEmpty() || circles.size() > MAX_CIRCLES) {
+            throw new IllegalArgumentException("A GeoMultiCircleQuery needs between 1 and " + MAX_CIRCLES + " circles!");
+        }
+        List<GeoCircle> capped = new ArrayList<>(circles.size());
+        for (GeoCircle circle: circles) {
+            // Capped like the radius of a GeoQuery
+            double radius = GeoUtils.INSTANCE.capRadius(circle.getRadius() / Constants.KILOMETER_TO_METER);
+            if (radius < circle.getRadius() / Constants.KILOMETER_TO_METER) {
+                circle = new GeoCircle(circle.getCenter(), radius * Constants.KILOMETER_TO_METER);
+            }
+            capped.add(circle);
+        }
+        return Collections.unmodifiableList(capped);
+    }
+
+    @Override
+    Set<GeoHashQuery> planQueries() {
+        List<GeoHashQuery> queries = new ArrayList<>();
+        for (GeoCircle circle: circles) {
+            queries.addAll(this.geoFirestore.getKeyScheme().queriesAtLocation(circle.getCenter(), circle.getRadius()));
+        }
+        return new LinkedHashSet<>(GeoHashQuery.Companion.coalesce(queries));
+    }
+
+    @Override
+    GeoRegion queryRegion() {
+        return new GeoUnion(new ArrayList<GeoRegion>(circles));
+    }
+
+    @Override
+    boolean insideKeepsMatch() {
+        // A cell inside the union may move to other circles
+        return false;
+    }
+
+    @Override
+    boolean locationIsInQuery(GeoPoint location) {
+        return matchOf(location) != 0;
+    }
+
+    @Override
+    long matchOf(GeoPoint location) {
+        long match = 0;
+        for (int i = 0; i < circles.size(); i++) {
+            GeoLocation center = circles.get(i).getCenter();
+            if (GeoUtils.INSTANCE.distance(location.getLatitude(), location.getLongitude(),
+                    center.getLatitude(), center.getLongitude()) <= circles.get(i).getRadius()) {
+                match |= 1L << i;
+            }
+        }
+        return match;
+    }
+
+    @Override
+    void raiseMatchChanged(GeoQueryDataEventListener listener, final DocumentSnapshot documentSnapshot,
+                           final GeoPoint location, long oldMatch, long newMatch) {
+        if (listener instanceof GeoQueryCirclesEventListener) {
+            final GeoQueryCirclesEventListener circlesListener = (GeoQueryCirclesEventListener) listener;
+            final List<Integer> indices = indicesOf(newMatch);
+            this.geoFirestore.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    circlesListener.onDocumentCirclesChanged(documentSnapshot, location, indices);
+                }
+            });
+        }
+    }
+
+    private static List<Integer> indicesOf(long match) {
+        List<Integer> indices = new ArrayList<>(Long.bitCount(match));
+        for (long bits = match; bits != 0; bits &= bits - 1) {
+            indices.add(Long.numberOfTrailingZeros(bits));
+        }
+        return Collections.unmodifiableList(indices);
+    }
+
+    /**
+     * Returns the circles currently containing a document.
+     * @param documentID The id of the document
+     * @return The indices of the circles containing the document, in increasing order, empty if none does
+     */
+    public synchronized List<Integer> getCirclesOf(String documentID) {
+        return indicesOf(this.currentMatch(documentID));
+    }
+
+    /**
+     * Returns the current circles of this query.
+     * @return The current circles
+     */
+    public synchronized List<GeoCircle> getCircles() {
+        return circles;
+    }
+
+    /**
+     * Sets the new circles of this query and triggers new events if necessary.
+     * @param circles The new circles, at most 64, radii bigger than about 8587km being capped
+     */
+    public synchronized void setCircles(List<GeoCircle> circles) {
+        this.circles = checkCircles(circles);
+        if (this.hasListeners()) {
+            this.setupQueries();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.imperiumlabs.geofirestore
+
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.Query
+import org.imperiumlabs.geofirestore.core.GeoHashQuery
+import org.imperiumlabs.geofirestore.region.GeoRegion
+
+/**
+ * A one-shot query over a region of any size, up to the whole earth, split into partitions.
+ *
+ * The partitions are the cells of one level of the grid shared by the key schemes that overlap
+ * the region, each read as its own range. They are independent: a bounded number of them is read
+ * in parallel, each in pages of a bounded number of documents, so scanning the planet never
+ * needs one enormous query or listener. Documents of the partitions crossing the border of the
+ * region are filtered by region membership.
+ */
+class GeoPartitionedQuery internal constructor(
+        private val geoFirestore: GeoFirestore,
+        // The region of the query
+        val region: GeoRegion,
+        // The level of the grid of the partitions
+        val level: Int) {
+
+    /**
+     * Receives the documents of a GeoPartitionedQuery. Its methods are called on the main thread.
+     */
+    interface PartitionListener {
+
+        /**
+         * Called for every page of documents of a partition inside the region.
+         *
+         * @param partition The index of the partition in partitions
+         * @param documentSnapshots The documents of the page inside the region
+         */
+        fun onDocuments(partition: Int, documentSnapshots: List<DocumentSnapshot>)
+
+        /**
+         * Called once every partition was read, or after the first error. No partition is
+         * started after an error.
+         *
+         * @param exception The exception or null if no exception occurred
+         */
+        fun onComplete(exception: Exception?)
+    }
+
+    companion object {
+        // The default number of partitions read in parallel
+        const val DEFAULT_PARALLELISM = 4
+
+        // The default number of documents of a page
+        const val DEFAULT_PAGE_SIZE = 500L
+
+        // The number of levels the partitions are finer than the cells about as big as the region
+        internal const val PARTITION_REFINE_LEVELS = 3
+    }
+
+    // Whether each partition is entirely inside the region, its documents need no filtering
+    private val inside = ArrayList<Boolean>()
+
+    /**
+     * The ranges of the partitions.
+     */
+    val partitions: List<GeoHashQuery>
+
+    init {
+        val queries = ArrayList<GeoHashQuery>()
+        for (child in 0 until 4)
+            partition(1, (child and 1).toLong(), (child shr 1).toLong(), queries)
+        partitions = queries
+    }
+
+    /*
+     * Add the cells of the partition level inside the cell at (column, row) of the given level overlapping the region
+     */
+    private fun partition(level: Int, column: Long, row: Long, queries: MutableList<GeoHashQuery>) {
+        val latitudeSize = 180.0 / (1L shl level)
+        val longitudeSize = 360.0 / (1L shl level)
+        val minLatitude = -90.0 + row * latitudeSize
+        val minLongitude = -180.0 + column * longitudeSize
+        val relation = region.relate(minLatitude, minLongitude, minLatitude + latitudeSize, minLongitude + longitudeSize)
+        if (relation == GeoRegion.Relation.DISJOINT)
+            return
+        if (level == this.level) {
+            queries.add(geoFirestore.keyScheme.queryForCell(level, column, row))
+            inside.add(relation == GeoRegion.Relation.INSIDE)
+            return
+        }
+        for (child in 0 until 4)
+            partition(level + 1, (column shl 1) or (child and 1).toLong(), (row shl 1) or (child shr 1).toLong(), queries)
+    }
+
+    /**
+     * Read the partitions and pass their documents to a listener.
+     *
+     * @param listener The listener receiving the documents
+     * @param parallelism The maximal number of partitions read at the same time
+     * @param pageSize The maximal number of documents read by a single query
+     */
+    @JvmOverloads
+    fun execute(listener: PartitionListener, parallelism: Int = DEFAULT_PARALLELISM, pageSize: Long = DEFAULT_PAGE_SIZE) {
+        if (parallelism < 1)
+            throw IllegalArgumentException("At least one partition must be read at a time!")
+        if (pageSize < 1)
+            throw IllegalArgumentException("A page needs at least one document!")
+        Execution(listener, parallelism, pageSize).start()
+    }
+
+    /*
+     * The state of one execution, only touched by the callbacks of the tasks on the main thread
+     */
+    private inner class Execution(private val listener: PartitionListener,
+                                  private val parallelism: Int,
+                                  private val pageSize: Long) {
+        private var nextPartition = 0
+        private var running = 0
+        private var failed = false
+
+        fun start() {
+            if (partitions.isEmpty()) {
+                listener.onComplete(null)
+                return
+            }
+            repeat(Math.min(parallelism, partitions.size)) { startNext() }
+        }
+
+        private fun startNext() {
+            running++
+            readPage(nextPartition++, null)
+        }
+
+        private fun readPage(partition: Int, after: DocumentSnapshot?) {
+            val range = partitions[partition]
+            val ordered: Query = geoFirestore.collectionReference.orderBy("g")
+            val query = if (after == null) ordered.startAt(range.startValue) else ordered.startAfter(after)
+            query.endAt(range.endValue).limit(pageSize).get().addOnCompleteListener { task ->
+                if (failed) return@addOnCompleteListener
+                if (!task.isSuccessful) {
+                    failed = true
+                    GeoFirestore.LOGGER.warning("Failed retrieving data for partitioned query")
+                    listener.onComplete(task.exception)
+                    return@addOnCompleteListener
+                }
+                val documents = task.result!!.documents
+                val matching = if (inside[partition]) documents else documents.filter {
+                    val location = GeoFirestore.getLocationValue(it)
+                    location != null && region.contains(location.latitude, location.longitude)
+                }
+                if (matching.isNotEmpty())
+                    listener.onDocuments(partition, matching)
+                if (documents.size.toLong() == pageSize) {
+                    readPage(partition, documents[documents.size - 1])
+                    return@addOnCompleteListener
+                }
+                running--
+                if (nextPartition < partitions.size)
+                    startNext()
+                else if (running == 0)
+                    listener.onComplete(null)
+            }
+        }
+    }
+
+    override fun toString() = "GeoPartitionedQuery(region=$region, level=$level, partitions=${partitions.size})"
+}
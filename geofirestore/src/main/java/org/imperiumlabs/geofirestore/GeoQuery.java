@@ -1,85 +1,33 @@
 package org.imperiumlabs.geofirestore;
 
-
 // FULLY TESTED
 
-import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
-
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
-import com.google.firebase.firestore.CollectionReference;
-import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.EventListener;
-import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.GeoPoint;
-import com.google.firebase.firestore.ListenerRegistration;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QuerySnapshot;
 
-import org.imperiumlabs.geofirestore.listeners.EventListenerBridge;
-import org.imperiumlabs.geofirestore.listeners.GeoQueryDataEventListener;
-import org.imperiumlabs.geofirestore.listeners.GeoQueryEventListener;
-import org.imperiumlabs.geofirestore.core.GeoHash;
 import org.imperiumlabs.geofirestore.core.GeoHashQuery;
+import org.imperiumlabs.geofirestore.core.QueryPlan;
+import org.imperiumlabs.geofirestore.region.GeoCircle;
+import org.imperiumlabs.geofirestore.region.GeoRegion;
+import org.imperiumlabs.geofirestore.util.Constants;
 import org.imperiumlabs.geofirestore.util.GeoUtils;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.Set;
-import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 
-// TODO: 05/05/19 Android Studio show error for javadoc in @throws IllegalArgumentException
 /**
  * A GeoQuery object can be used for geo queries in a given circle. The GeoQuery class is thread safe.
  */
-public class GeoQuery {
-    private static final int KILOMETER_TO_METER = 1000;
-
-    private static class LocationInfo {
-        final GeoPoint location;
-        final boolean inGeoQuery;
-        final GeoHash geoHash;
-        final DocumentSnapshot documentSnapshot;
-
-        LocationInfo(GeoPoint location, boolean inGeoQuery, DocumentSnapshot documentSnapshot) {
-            this.location = location;
-            this.inGeoQuery = inGeoQuery;
-            this.geoHash = new GeoHash(new GeoLocation(location.getLatitude(), location.getLongitude()));
-            this.documentSnapshot = documentSnapshot;
-        }
-    }
-
-    private static class GeoHashQueryListener {
-        final ListenerRegistration childAddedListener;
-        final ListenerRegistration childRemovedListener;
-        final ListenerRegistration childChangedListener;
-
-        GeoHashQueryListener(ListenerRegistration childAddedListener,
-                             ListenerRegistration childRemovedListener,
-                             ListenerRegistration childChangedListener){
-            this.childAddedListener = childAddedListener;
-            this.childRemovedListener = childRemovedListener;
-            this.childChangedListener = childChangedListener;
-        }
-    }
-
-    private final GeoFirestore geoFirestore;
-
-    private final Map<String, LocationInfo> locationInfos = new HashMap<>();
-    private Set<GeoHashQuery> queries;
-    private final Map<GeoHashQuery, Query> firestoreQueries = new HashMap<>();
-    private final Map<GeoHashQuery, GeoHashQueryListener> handles = new HashMap<>();
-    private final Set<GeoHashQuery> outstandingQueries = new HashSet<>();
-
-    private final Set<GeoQueryDataEventListener> eventListeners = new HashSet<>();
-
+public class GeoQuery extends AbstractGeoQuery {
     private GeoPoint center;
     private double radius;
 
+    private RecenterPolicy recenterPolicy = RecenterPolicy.IMMEDIATE;
+    // The center and the padded radius the current ranges were planned for, and when
+    private GeoPoint plannedCenter;
+    private double plannedRadius;
+    private long plannedTime;
+    private boolean replanScheduled;
+
 
     /**
      * Creates a new GeoQuery object centered at the given location and with the given radius.
@@ -89,409 +37,145 @@ public class GeoQuery {
      * supported is about 8587km. If a radius bigger than this is passed we'll cap it.
      */
     GeoQuery(GeoFirestore geoFirestore, GeoPoint center, double radius) {
-        this.geoFirestore = geoFirestore;
+        super(geoFirestore);
         this.center = center;
-        this.radius = radius * KILOMETER_TO_METER; // Convert from kilometers to meters.
-    }
-
-    private boolean locationIsInQuery(GeoPoint location) {
-        return GeoUtils.INSTANCE.distance(new GeoLocation(location.getLatitude(), location.getLongitude()), new GeoLocation(center.getLatitude(), center.getLongitude())) <= this.radius;
-    }
-
-    private void updateLocationInfo(final DocumentSnapshot documentSnapshot, final GeoPoint location) {
-        String documentID = documentSnapshot.getId();
-        LocationInfo oldInfo = this.locationInfos.get(documentID);
-
-        boolean isNew = oldInfo == null;
-        final boolean changedLocation = oldInfo != null && !oldInfo.location.equals(location);
-        boolean wasInQuery = oldInfo != null && oldInfo.inGeoQuery;
-
-        boolean isInQuery = this.locationIsInQuery(location);
-        if ((isNew || !wasInQuery) && isInQuery) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFirestore.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onDocumentEntered(documentSnapshot, location);
-                    }
-                });
-            }
-        } else if (!isNew && isInQuery) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFirestore.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (changedLocation) {
-                            listener.onDocumentMoved(documentSnapshot, location);
-                        }
-
-                        listener.onDocumentChanged(documentSnapshot, location);
-                    }
-                });
-            }
-        } else if (wasInQuery && !isInQuery) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFirestore.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onDocumentExited(documentSnapshot);
-                    }
-                });
-            }
-        }
-        LocationInfo newInfo = new LocationInfo(location, this.locationIsInQuery(location), documentSnapshot);
-        this.locationInfos.put(documentID, newInfo);
-    }
-
-    private boolean geoHashQueriesContainGeoHash(GeoHash geoHash) {
-        if (this.queries == null) {
-            return false;
-        }
-        for (GeoHashQuery query: this.queries) {
-            if (query.containsGeoHash(geoHash)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private void reset() {
-        for(Map.Entry<GeoHashQuery, Query> entry: this.firestoreQueries.entrySet()) {
-            GeoHashQueryListener handle = handles.get(entry.getKey());
-            handle.childAddedListener.remove();
-            handle.childRemovedListener.remove();
-            handle.childChangedListener.remove();
-        }
-
-        this.locationInfos.clear();
-        this.queries = null;
-        this.firestoreQueries.clear();
-        this.handles.clear();
-        this.outstandingQueries.clear();
-    }
-
-    private boolean hasListeners() {
-        return !this.eventListeners.isEmpty();
-    }
-
-    private boolean canFireReady() {
-        return this.outstandingQueries.isEmpty();
+        this.radius = radius * Constants.KILOMETER_TO_METER; // Convert from kilometers to meters.
     }
 
-    private void checkAndFireReady() {
-        if (canFireReady()) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFirestore.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onGeoQueryReady();
-                    }
-                });
-            }
-        }
+    @Override
+    void setupQueries() {
+        this.plannedCenter = center;
+        this.plannedRadius = paddedRadius();
+        this.plannedTime = System.currentTimeMillis();
+        super.setupQueries();
     }
 
-    private void addValueToReadyListener(final Query firestore, final GeoHashQuery query) {
-        firestore.get().addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-            @Override
-            public void onComplete(@NonNull final Task<QuerySnapshot> task) {
-                if (task.isSuccessful()){
-
-                    synchronized (GeoQuery.this) {
-                        GeoQuery.this.outstandingQueries.remove(query);
-                        GeoQuery.this.checkAndFireReady();
-                    }
-
-                }else{
-
-                    synchronized (GeoQuery.this) {
-                        for (final GeoQueryDataEventListener listener : GeoQuery.this.eventListeners) {
-                            GeoQuery.this.geoFirestore.raiseEvent(new Runnable() {
-                                @Override
-                                public void run() {
-                                    listener.onGeoQueryError(task.getException());
-                                }
-                            });
-                        }
-                    }
-
-                }
-            }
-        });
-    }
-
-    private void setupQueries() {
-        Set<GeoHashQuery> oldQueries = (queries == null) ? new HashSet<GeoHashQuery>() : queries;
-        Set<GeoHashQuery> newQueries = GeoHashQuery.Companion.queriesAtLocation(new GeoLocation(center.getLatitude(), center.getLongitude()), radius);
-        this.queries = newQueries;
-
-        for (GeoHashQuery query: oldQueries) {
-            if (!newQueries.contains(query)) {
-                GeoHashQueryListener handle = handles.get(firestoreQueries.get(query));
-                if (handle != null) {
-                    handle.childAddedListener.remove();
-                    handle.childRemovedListener.remove();
-                    handle.childChangedListener.remove();
-                }
-                firestoreQueries.remove(query);
-                outstandingQueries.remove(query);
-            }
-        }
-        for (final GeoHashQuery query: newQueries) {
-            if (!oldQueries.contains(query)) {
-                outstandingQueries.add(query);
-                CollectionReference collectionReference = this.geoFirestore.getCollectionReference();
-
-                Query firestoreQuery = collectionReference.orderBy("g").startAt(query.getStartValue()).endAt(query.getEndValue());
-
-                ListenerRegistration childAddedListener = firestoreQuery.addSnapshotListener(new EventListener<QuerySnapshot>() {
-                    @Override
-                    public void onEvent(@Nullable QuerySnapshot queryDocumentSnapshots, @Nullable FirebaseFirestoreException e) {
-                        if (queryDocumentSnapshots != null && e == null){
-                            for(final DocumentChange docChange: queryDocumentSnapshots.getDocumentChanges()){
-                                if (docChange.getType() == DocumentChange.Type.ADDED){
-                                    childAdded(docChange.getDocument());
-                                }
-                            }
-                        }
-                    }
-                });
-                ListenerRegistration childRemovedListener = firestoreQuery.addSnapshotListener(new EventListener<QuerySnapshot>() {
-                    @Override
-                    public void onEvent(@Nullable QuerySnapshot queryDocumentSnapshots, @Nullable FirebaseFirestoreException e) {
-                        if (queryDocumentSnapshots != null && e == null){
-                            for(final DocumentChange docChange: queryDocumentSnapshots.getDocumentChanges()){
-                                if (docChange.getType() == DocumentChange.Type.REMOVED){
-                                    childRemoved(docChange.getDocument());
-                                }
-                            }
-                        }
-                    }
-                });
-                ListenerRegistration childChangedListener = firestoreQuery.addSnapshotListener(new EventListener<QuerySnapshot>() {
-                    @Override
-                    public void onEvent(@Nullable QuerySnapshot queryDocumentSnapshots, @Nullable FirebaseFirestoreException e) {
-                        if (queryDocumentSnapshots != null && e == null){
-                            for(final DocumentChange docChange: queryDocumentSnapshots.getDocumentChanges()){
-                                if (docChange.getType() == DocumentChange.Type.MODIFIED){
-                                    childChanged(docChange.getDocument());
-                                }
-                            }
-                        }
-                    }
-                });
-
-                GeoHashQueryListener handle = new GeoHashQueryListener(childAddedListener, childRemovedListener, childChangedListener);
-                handles.put(query, handle);
-                addValueToReadyListener(firestoreQuery, query);
-                firestoreQueries.put(query, firestoreQuery);
-            }
-        }
-        for (Map.Entry<String, LocationInfo> info: this.locationInfos.entrySet()) {
-            LocationInfo oldLocationInfo = info.getValue();
-
-            if (oldLocationInfo != null) {
-                updateLocationInfo(oldLocationInfo.documentSnapshot, oldLocationInfo.location);
-            }
-        }
-        // remove locations that are not part of the geo query anymore
-        Iterator<Map.Entry<String, LocationInfo>> it = this.locationInfos.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, LocationInfo> entry = it.next();
-            if (!this.geoHashQueriesContainGeoHash(entry.getValue().geoHash)) {
-                it.remove();
-            }
-        }
-
-        checkAndFireReady();
+    @Override
+    Set<GeoHashQuery> planQueries() {
+        return this.geoFirestore.getKeyScheme().queriesAtLocation(new GeoLocation(center.getLatitude(), center.getLongitude()), paddedRadius());
     }
 
-    private void childAdded(DocumentSnapshot documentSnapshot) {
-        GeoPoint location = GeoFirestore.Companion.getLocationValue(documentSnapshot);
-        if (location != null) {
-            this.updateLocationInfo(documentSnapshot, location);
-        }
+    /*
+     * The slack keeps the ranges covering the query while the center moves less than the minimal displacement
+     */
+    private double paddedRadius() {
+        return radius + this.recenterPolicy.getMinDisplacement();
     }
 
-    private void childChanged(DocumentSnapshot documentSnapshot) {
-        GeoPoint location = GeoFirestore.Companion.getLocationValue(documentSnapshot);
-        if (location != null) {
-            this.updateLocationInfo(documentSnapshot, location);
-        }
+    @Override
+    boolean locationIsInQuery(GeoPoint location) {
+        return GeoUtils.INSTANCE.distance(location.getLatitude(), location.getLongitude(), center.getLatitude(), center.getLongitude()) <= this.radius;
     }
 
-    private void childRemoved(DocumentSnapshot documentSnapshot) {
-        final String documentID = documentSnapshot.getId();
-        final LocationInfo info = this.locationInfos.get(documentID);
-        if (info != null) {
-            this.geoFirestore.getRefForDocumentID(documentID).get().addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
-                @Override
-                public void onComplete(@NonNull Task<DocumentSnapshot> task) {
-                    if (task.isSuccessful()){
-
-                        synchronized (GeoQuery.this) {
-                            GeoPoint location = GeoFirestore.Companion.getLocationValue(task.getResult());
-                            GeoHash hash = (location != null) ? new GeoHash(new GeoLocation(location.getLatitude(), location.getLongitude())) : null;
-                            if (hash == null || !GeoQuery.this.geoHashQueriesContainGeoHash(hash)) {
-                                final LocationInfo locInfo = locationInfos.remove(documentID);
-                                if (locInfo != null && locInfo.inGeoQuery) {
-
-                                    for (final GeoQueryDataEventListener listener: GeoQuery.this.eventListeners) {
-                                        GeoQuery.this.geoFirestore.raiseEvent(new Runnable() {
-                                            @Override
-                                            public void run() {
-                                                listener.onDocumentExited(locInfo.documentSnapshot);
-                                            }
-                                        });
-                                    }
-
-                                }
-                            }
-                        }
-
-                    }
-                }
-            });
-        }
+    @Override
+    GeoRegion queryRegion() {
+        return new GeoCircle(new GeoLocation(center.getLatitude(), center.getLongitude()), radius);
     }
 
     /**
-     * Adds a new GeoQueryEventListener to this GeoQuery.
-     *
-     * @throws IllegalArgumentException If this listener was already added
-     *
-     * @param listener The listener to add
+     * Returns the current center of this query.
+     * @return The current center
      */
-    public synchronized void addGeoQueryEventListener(final GeoQueryEventListener listener) {
-        addGeoQueryDataEventListener(new EventListenerBridge(listener));
+    public synchronized GeoPoint getCenter() {
+        return center;
     }
 
     /**
-     * Adds a new GeoQueryEventListener to this GeoQuery.
-     *
-     * @throws IllegalArgumentException If this listener was already added
-     *
-     * @param listener The listener to add
+     * Sets the new center of this query and triggers new events if necessary. The ranges of the
+     * query are planned again according to its re-center policy, while the enter and exit events
+     * always follow the new center. A plan is deferred only while the ranges listened to still
+     * cover the new circle, so no document is missed in the meantime.
+     * @param center The new center
      */
-    public synchronized void addGeoQueryDataEventListener(final GeoQueryDataEventListener listener) {
-        if (eventListeners.contains(listener)) {
-            throw new IllegalArgumentException("Added the same listener twice to a GeoQuery!");
+    public synchronized void setCenter(GeoPoint center) {
+        this.center = center;
+        if (!this.hasListeners()) {
+            return;
         }
-        eventListeners.add(listener);
-        if (this.queries == null) {
+        if (this.plannedCenter == null) {
             this.setupQueries();
+        } else if (this.isCoveredByPlan()) {
+            this.refreshMatches();
         } else {
-            for (final Map.Entry<String, LocationInfo> entry: this.locationInfos.entrySet()) {
-                final LocationInfo info = entry.getValue();
-
-                if (info.inGeoQuery) {
-                    this.geoFirestore.raiseEvent(new Runnable() {
-                        @Override
-                        public void run() {
-                            listener.onDocumentEntered(info.documentSnapshot, info.location);
-                        }
-                    });
-                }
-            }
-            if (this.canFireReady()) {
-                this.geoFirestore.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onGeoQueryReady();
-                    }
-                });
+            long wait = this.plannedTime + this.recenterPolicy.getMinInterval() - System.currentTimeMillis();
+            // The padding is used up, but the listened cells are usually larger than the circle
+            if (wait > 0 && this.rangesCover(this.geoFirestore.getKeyScheme().queriesAtLocation(
+                    new GeoLocation(center.getLatitude(), center.getLongitude()), this.radius))) {
+                this.refreshMatches();
+                this.scheduleReplan(wait);
+            } else {
+                this.setupQueries();
             }
         }
     }
 
     /**
-     * Get the Firestore query(s) for this GeoQuery.
-     *
-     * @return The Firestore query(s) for this GeoQuery
+     * Returns the re-center policy of this query.
+     * @return The re-center policy
      */
-    public ArrayList<Query> getQueries() {
-        Set<GeoHashQuery> oldQueries = (queries == null) ? new HashSet<GeoHashQuery>() : queries;
-        Set<GeoHashQuery> newQueries = GeoHashQuery.Companion.queriesAtLocation(new GeoLocation(center.getLatitude(), center.getLongitude()), radius);
-        this.queries = newQueries;
-
-        for (GeoHashQuery query: oldQueries) {
-            if (!newQueries.contains(query)) {
-                GeoHashQueryListener handle = handles.get(firestoreQueries.get(query));
-                if (handle != null) {
-                    handle.childAddedListener.remove();
-                    handle.childRemovedListener.remove();
-                    handle.childChangedListener.remove();
-                }
-                firestoreQueries.remove(query);
-                outstandingQueries.remove(query);
-            }
-        }
-
-        ArrayList<Query> queries = new ArrayList<Query>();
-        for (final GeoHashQuery query: newQueries) {
-            if (!oldQueries.contains(query)) {
-                outstandingQueries.add(query);
-                CollectionReference collectionReference = this.geoFirestore.getCollectionReference();
-                Query firestoreQuery = collectionReference.orderBy("g").startAt(query.getStartValue()).endAt(query.getEndValue());
-                queries.add(firestoreQuery);
-            }
-        }
-        return queries;
+    public synchronized RecenterPolicy getRecenterPolicy() {
+        return recenterPolicy;
     }
 
     /**
-     * Removes an event listener.
-     *
-     * @throws IllegalArgumentException If the listener was removed already or never added
-     *
-     * @param listener The listener to remove
+     * Sets when the ranges of this query are planned again after setCenter. The current ranges
+     * are kept until the next plan, and cover the centers within the padding they were planned with.
+     * @param recenterPolicy The new re-center policy
      */
-    public synchronized void removeGeoQueryEventListener(GeoQueryEventListener listener) {
-        removeGeoQueryEventListener(new EventListenerBridge(listener));
+    public synchronized void setRecenterPolicy(RecenterPolicy recenterPolicy) {
+        this.recenterPolicy = recenterPolicy;
     }
 
-    /**
-     * Removes an event listener.
-     *
-     * @throws IllegalArgumentException If the listener was removed already or never added
-     *
-     * @param listener The listener to remove
+    /*
+     * True if the ranges planned for plannedCenter still cover the circle around center. The slack is the
+     * padding of the plan, the policy may have changed since
      */
-    public synchronized void removeGeoQueryEventListener(final GeoQueryDataEventListener listener) {
-        if (!eventListeners.contains(listener)) {
-            throw new IllegalArgumentException("Trying to remove listener that was removed or not added!");
-        }
-        eventListeners.remove(listener);
-        if (!this.hasListeners()) {
-            reset();
-        }
+    private boolean isCoveredByPlan() {
+        double displacement = GeoUtils.INSTANCE.distance(plannedCenter.getLatitude(), plannedCenter.getLongitude(),
+                center.getLatitude(), center.getLongitude());
+        return displacement <= this.plannedRadius - this.radius;
     }
 
-    /**
-     * Removes all event listeners from this GeoQuery.
-     */
-    public synchronized void removeAllListeners() {
-        eventListeners.clear();
-        reset();
+    private void scheduleReplan(long delay) {
+        if (this.replanScheduled) {
+            return;
+        }
+        this.replanScheduled = true;
+        SCHEDULER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (GeoQuery.this) {
+                    replanScheduled = false;
+                    // The center may have come back or been planned by setRadius meanwhile
+                    if (hasListeners() && plannedCenter != null && !isCoveredByPlan()) {
+                        setupQueries();
+                    }
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Returns the current center of this query.
-     * @return The current center
+     * Explains the covering of this query without changing it: the ranges listened to, planned for the
+     * center of the last plan and the radius padded by the minimal displacement of the re-center policy.
+     * @return The ranges of the covering with their read and listener estimates
      */
-    public synchronized GeoPoint getCenter() {
-        return center;
+    public synchronized QueryPlan explain() {
+        boolean planned = this.hasListeners() && this.plannedCenter != null;
+        GeoPoint center = planned ? this.plannedCenter : this.center;
+        double radius = planned ? this.plannedRadius : this.paddedRadius();
+        return new QueryPlan(this.geoFirestore.getKeyScheme(), new GeoLocation(center.getLatitude(), center.getLongitude()),
+                radius, LISTENERS_PER_QUERY);
     }
 
     /**
-     * Sets the new center of this query and triggers new events if necessary.
-     * @param center The new center
+     * Explains the covering this query would use with another center and radius, without changing it.
+     * @param center The center to explain
+     * @param radius The radius to explain, in kilometers
+     * @return The ranges of the covering with their read and listener estimates
      */
-    public synchronized void setCenter(GeoPoint center) {
-        this.center = center;
-        if (this.hasListeners()) {
-            this.setupQueries();
-        }
+    public QueryPlan explain(GeoPoint center, double radius) {
+        return this.geoFirestore.explain(center, radius);
     }
 
     /**
@@ -500,7 +184,7 @@ public class GeoQuery {
      */
     public synchronized double getRadius() {
         // convert from meters
-        return radius / KILOMETER_TO_METER;
+        return radius / Constants.KILOMETER_TO_METER;
     }
 
     /**
@@ -510,7 +194,7 @@ public class GeoQuery {
      */
     public synchronized void setRadius(double radius) {
         // convert to meters
-        this.radius = GeoUtils.INSTANCE.capRadius(radius) * KILOMETER_TO_METER;
+        this.radius = GeoUtils.INSTANCE.capRadius(radius) * Constants.KILOMETER_TO_METER;
         if (this.hasListeners()) {
             this.setupQueries();
         }
@@ -525,7 +209,7 @@ public class GeoQuery {
     public synchronized void setLocation(GeoPoint center, double radius) {
         this.center = center;
         // convert radius to meters
-        this.radius = GeoUtils.INSTANCE.capRadius(radius) * KILOMETER_TO_METER;
+        this.radius = GeoUtils.INSTANCE.capRadius(radius) * Constants.KILOMETER_TO_METER;
         if (this.hasListeners()) {
             this.setupQueries();
         }
@@ -0,0 +1,61 @@
+package org.imperiumlabs.geofirestore;
+
+import com.google.firebase.firestore.GeoPoint;
+
+import org.imperiumlabs.geofirestore.core.GeoHashQuery;
+import org.imperiumlabs.geofirestore.region.GeoRegion;
+
+import java.util.Set;
+
+/**
+ * A GeoRegionQuery object can be used for geo queries in a GeoRegion, such as a GeoBoundingBox.
+ * Documents are matched by the exact membership test of the region. The GeoRegionQuery class is thread safe.
+ */
+public class GeoRegionQuery extends AbstractGeoQuery {
+
+    private GeoRegion region;
+
+    /**
+     * Creates a new GeoRegionQuery object in the given region.
+     * @param geoFirestore The GeoFirestore object this GeoRegionQuery uses
+     * @param region The region of this query
+     */
+    GeoRegionQuery(GeoFirestore geoFirestore, GeoRegion region) {
+        super(geoFirestore);
+        this.region = region;
+    }
+
+    @Override
+    Set<GeoHashQuery> planQueries() {
+        return this.geoFirestore.getKeyScheme().queriesForRegion(region);
+    }
+
+    @Override
+    boolean locationIsInQuery(GeoPoint location) {
+        return region.contains(location.getLatitude(), location.getLongitude());
+    }
+
+    @Override
+    GeoRegion queryRegion() {
+        return region;
+    }
+
+    /**
+     * Returns the current region of this query.
+     * @return The current region
+     */
+    public synchronized GeoRegion getRegion() {
+        return region;
+    }
+
+    /**
+     * Sets the new region of this query and triggers new events if necessary.
+     * @param region The new region
+     */
+    public synchronized void setRegion(GeoRegion region) {
+        this.region = region;
+        if (this.hasListeners()) {
+            this.setupQueries();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.imperiumlabs.geofirestore;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.GeoPoint;
+
+import org.imperiumlabs.geofirestore.core.GeoHashQuery;
+import org.imperiumlabs.geofirestore.listeners.GeoQueryDataEventListener;
+import org.imperiumlabs.geofirestore.listeners.GeoQueryTierEventListener;
+import org.imperiumlabs.geofirestore.util.Constants;
+import org.imperiumlabs.geofirestore.util.GeoUtils;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A GeoTieredQuery object can be used for geo queries in nested circles sharing a center, the tiers.
+ * Only the covering of the outermost tier is listened to, and the tier of a document is found with
+ * a single distance evaluation per change. The GeoTieredQuery class is thread safe.
+ */
+public class GeoTieredQuery extends AbstractGeoQuery {
+    private GeoPoint center;
+    // The radii of the tiers in increasing order, in meters
+    private double[] radii;
+
+    /**
+     * Creates a new GeoTieredQuery object centered at the given location and with the given radii.
+     * @param geoFirestore The GeoFirestore object this GeoTieredQuery uses
+     * @param center The center of this query
+     * @param radii The radii of the tiers, in kilometers. The maximum radius that is
+     * supported is about 8587km. If a radius bigger than this is passed we'll cap it.
+     * @throws IllegalArgumentException If there is no tier, or a radius isn't positive and finite or is repeated
+     */
+    GeoTieredQuery(GeoFirestore geoFirestore, GeoPoint center, double[] radii) {
+        super(geoFirestore);
+        this.center = center;
+        this.radii = toMeters(radii);
+    }
+
+    private static double[] toMeters(double[] radii) {
+        if (radii.length == 0) {
+            throw new IllegalArgumentException("A GeoTieredQuery needs at least one tier!");
+        }
+        double[] meters = new double[radii.length];
+        for (int i = 0; i < radii.length; i++) {
+            if (!(radii[i] > 0) || Double.isInfinite(radii[i])) {
+                throw new IllegalArgumentException("The radius of a tier must be positive and finite: " + radii[i]);
+            }
+            meters[i] = GeoUtils.INSTANCE.capRadius(radii[i]) * Constants.KILOMETER_TO_METER;
+        }
+        Arrays.sort(meters);
+        for (int i = 1; i < meters.length; i++) {
+            // Radii capped to the same value are duplicates too
+            if (meters[i] == meters[i - 1]) {
+                throw new IllegalArgumentException("The tiers of a GeoTieredQuery must have different radii!");
+            }
+        }
+        return meters;
+    }
+
+    @Override
+    Set<GeoHashQuery> planQueries() {
+        return this.geoFirestore.getKeyScheme().queriesAtLocation(
+                new GeoLocation(center.getLatitude(), center.getLongitude()), radii[radii.length - 1]);
+    }
+
+    @Override
+    boolean locationIsInQuery(GeoPoint location) {
+        return matchOf(location) != 0;
+    }
+
+    @Override
+    long matchOf(GeoPoint location) {
+        double distance = GeoUtils.INSTANCE.distance(location.getLatitude(), location.getLongitude(),
+                center.getLatitude(), center.getLongitude());
+        // The match is the index of the innermost tier containing the location plus one
+        for (int i = 0; i < radii.length; i++) {
+            if (distance <= radii[i]) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    void raiseMatchChanged(GeoQueryDataEventListener listener, final DocumentSnapshot documentSnapshot,
+                           final GeoPoint location, final long oldMatch, final long newMatch) {
+        if (listener instanceof GeoQueryTierEventListener) {
+            final GeoQueryTierEventListener tierListener = (GeoQueryTierEventListener) listener;
+            this.geoFirestore.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    tierListener.onDocumentTierChanged(documentSnapshot, location, (int) oldMatch - 1, (int) newMatch - 1);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the current tier of a document.
+     * @param documentID The id of the document
+     * @return The index of the tier of the document, 0 for the innermost one, -1 if it isn't in the query
+     */
+    public synchronized int getTierOf(String documentID) {
+        return (int) this.currentMatch(documentID) - 1;
+    }
+
+    /**
+     * Returns the current center of this query.
+     * @return The current center
+     */
+    public synchronized GeoPoint getCenter() {
+        return center;
+    }
+
+    /**
+     * Sets the new center of this query and triggers new events if necessary.
+     * @param center The new center
+     */
+    public synchronized void setCenter(GeoPoint center) {
+        this.center = center;
+        if (this.hasListeners()) {
+            this.setupQueries();
+        }
+    }
+
+    /**
+     * Returns the radii of the tiers, in kilometers.
+     * @return The radii of the tiers in increasing order, in kilometers
+     */
+    public synchronized double[] getRadii() {
+        double[] kilometers = new double[radii.length];
+        for (int i = 0; i < radii.length; i++) {
+            // convert from meters
+            kilometers[i] = radii[i] / Constants.KILOMETER_TO_METER;
+        }
+        return kilometers;
+    }
+
+    /**
+     * Sets the radii of the tiers, in kilometers, and triggers new events if necessary.
+     * @param radii The radii of the tiers, in kilometers. The maximum radius that is
+     * supported is about 8587km. If a radius bigger than this is passed we'll cap it.
+     * @throws IllegalArgumentException If there is no tier, or a radius isn't positive and finite or is repeated
+     */
+    public synchronized void setRadii(double[] radii) {
+        this.radii = toMeters(radii);
+        if (this.hasListeners()) {
+            this.setupQueries();
+        }
+    }
+}
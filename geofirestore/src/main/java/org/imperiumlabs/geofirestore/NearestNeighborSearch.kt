@@ -0,0 +1,164 @@
+package org.imperiumlabs.geofirestore
+
+import com.google.android.gms.tasks.Task
+import com.google.android.gms.tasks.Tasks
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.QuerySnapshot
+import org.imperiumlabs.geofirestore.core.GeoHash
+import org.imperiumlabs.geofirestore.core.GeoHashQuery
+import org.imperiumlabs.geofirestore.util.GeoUtils
+import java.util.PriorityQueue
+
+/**
+ * Finds the k documents nearest to a center by reading rings of cells growing outwards.
+ *
+ * The first ring is the block of 3x3 cells of the starting level around the center. Every next
+ * ring is the block of 3x3 cells one level coarser minus the previous block, which it always
+ * contains, so no cell is read twice and a ring is at most 12 cells whatever its size. The
+ * nearest candidates are kept in a max-heap of k documents, and the search stops once the
+ * next ring is farther than the k-th candidate: a location outside a block is at least as far
+ * as the ring around the block.
+ *
+ * Blocks are clamped at the poles, so a block reaching a pole only spans its 3 columns of the
+ * polar row while the locations across the pole are as near as the pole itself. The distance
+ * of a ring reaching a pole is therefore at most the distance to the pole: near a pole the
+ * search stops once the k-th candidate is nearer than the pole, and otherwise keeps widening
+ * until the blocks span every column, reading more rings than elsewhere.
+ */
+internal class NearestNeighborSearch(
+        private val geoFirestore: GeoFirestore,
+        private val center: GeoLocation,
+        private val k: Int,
+        startLevel: Int,
+        private val callback: GeoFirestore.SingleGeoQueryDataEventCallback) {
+
+    private class Candidate(val documentSnapshot: DocumentSnapshot, val distance: Double)
+
+    private class Ring(val queries: Set<GeoHashQuery>, val minDistance: Double)
+
+    init {
+        if (k < 1)
+            throw IllegalArgumentException("A nearest neighbor search needs k >= 1!")
+    }
+
+    // The farthest candidate is at the head
+    private val candidates = PriorityQueue<Candidate>(k, Comparator { a, b -> java.lang.Double.compare(b.distance, a.distance) })
+    private var level = startLevel
+    private var block = blockOf(startLevel)
+
+    fun start() = read(ringOf(level, block, null))
+
+    private fun read(ring: Ring) {
+        if (ring.queries.isEmpty()) {
+            next()
+            return
+        }
+        val tasks = ring.queries.map {
+            geoFirestore.collectionReference.orderBy("g").startAt(it.startValue).endAt(it.endValue).get()
+        }
+        Tasks.whenAllComplete(tasks).addOnCompleteListener {
+            val failed = tasks.firstOrNull { !it.isSuccessful }
+            if (failed != null) {
+                GeoFirestore.LOGGER.warning("Failed retrieving data for nearest neighbor search")
+                callback.onComplete(null, failed.exception)
+                return@addOnCompleteListener
+            }
+            tasks.forEach { task: Task<QuerySnapshot> -> task.result?.documents?.forEach { offer(it) } }
+            next()
+        }
+    }
+
+    private fun offer(documentSnapshot: DocumentSnapshot) {
+        val location = GeoFirestore.getLocationValue(documentSnapshot) ?: return
+        val distance = GeoUtils.distance(center.latitude, center.longitude, location.latitude, location.longitude)
+        if (candidates.size < k) {
+            candidates.add(Candidate(documentSnapshot, distance))
+        } else if (distance < candidates.peek().distance) {
+            candidates.poll()
+            candidates.add(Candidate(documentSnapshot, distance))
+        }
+    }
+
+    private fun next() {
+        // The 3x3 block of the first level covers the whole grid
+        if (level == 1) {
+            finish()
+            return
+        }
+        val coarserBlock = blockOf(level - 1)
+        val ring = ringOf(level - 1, coarserBlock, block)
+        if (candidates.size == k && ring.minDistance > candidates.peek().distance) {
+            finish()
+            return
+        }
+        level--
+        block = coarserBlock
+        read(ring)
+    }
+
+    private fun finish() {
+        val nearest = ArrayList<Candidate>(candidates)
+        nearest.sortBy { it.distance }
+        callback.onComplete(nearest.map { it.documentSnapshot }, null)
+    }
+
+    /*
+     * The cells of the 3x3 block around the center at a level, as row * 2^level + column,
+     * rows clamped at the poles and columns wrapped around the antimeridian
+     */
+    private fun blockOf(level: Int): Set<Long> {
+        val side = 1L shl level
+        val row = GeoHash.quantize(center.latitude, -90.0, 90.0, level)
+        val column = GeoHash.quantize(center.longitude, -180.0, 180.0, level)
+        val cells = HashSet<Long>()
+        for (r in Math.max(0L, row - 1)..Math.min(side - 1, row + 1))
+            for (c in column - 1..column + 1)
+                cells.add(r * side + ((c + side) and (side - 1)))
+        return cells
+    }
+
+    /*
+     * The cells of a block minus the finer block of the previous ring: whole cells when
+     * none of their children were read, otherwise the children that weren't
+     */
+    private fun ringOf(level: Int, block: Set<Long>, previous: Set<Long>?): Ring {
+        val side = 1L shl level
+        val queries = ArrayList<GeoHashQuery>()
+        var minDistance = Double.MAX_VALUE
+        for (cell in block) {
+            val row = cell / side
+            val column = cell % side
+            // The locations across a pole are reached through it
+            if (row == 0L)
+                minDistance = Math.min(minDistance, GeoUtils.distance(center.latitude, center.longitude, -90.0, center.longitude))
+            if (row == side - 1)
+                minDistance = Math.min(minDistance, GeoUtils.distance(center.latitude, center.longitude, 90.0, center.longitude))
+            if (previous == null || (0 until 4).none { previous.contains(childOf(row, column, side, it)) }) {
+                queries.add(geoFirestore.keyScheme.queryForCell(level, column, row))
+                minDistance = Math.min(minDistance, distanceToCell(level, column, row))
+                continue
+            }
+            for (child in 0 until 4) {
+                val childCell = childOf(row, column, side, child)
+                if (previous.contains(childCell)) continue
+                val childRow = childCell / (2 * side)
+                val childColumn = childCell % (2 * side)
+                queries.add(geoFirestore.keyScheme.queryForCell(level + 1, childColumn, childRow))
+                minDistance = Math.min(minDistance, distanceToCell(level + 1, childColumn, childRow))
+            }
+        }
+        return Ring(LinkedHashSet(GeoHashQuery.coalesce(queries)), minDistance)
+    }
+
+    private fun childOf(row: Long, column: Long, side: Long, child: Int) =
+            ((row shl 1) or (child shr 1).toLong()) * (2 * side) + ((column shl 1) or (child and 1).toLong())
+
+    private fun distanceToCell(level: Int, column: Long, row: Long): Double {
+        val latitudeSize = 180.0 / (1L shl level)
+        val longitudeSize = 360.0 / (1L shl level)
+        val minLatitude = -90.0 + row * latitudeSize
+        val minLongitude = -180.0 + column * longitudeSize
+        return GeoUtils.distanceToBoundingBox(center.latitude, center.longitude,
+                minLatitude, minLongitude, minLatitude + latitudeSize, minLongitude + longitudeSize)
+    }
+}
@@ -0,0 +1,44 @@
+package org.imperiumlabs.geofirestore
+
+/**
+ * Decides when a moving GeoQuery re-plans its ranges after GeoQuery.setCenter.
+ *
+ * The ranges are planned for the radius grown by minDisplacement, so they keep covering the
+ * query while its center stays within minDisplacement of the center they were planned for: the
+ * plan is kept and only the matches are evaluated against the latest center. Once the center
+ * moves farther, the ranges are planned again, at most once every minInterval milliseconds while
+ * the ranges listened to still cover the new circle, the last center of the interval being
+ * planned when it ends. A circle leaving the listened ranges is planned at once, so no document
+ * is missed. The listeners then change with the distance travelled rather than with the rate of
+ * the location updates.
+ */
+class RecenterPolicy @JvmOverloads constructor(
+        // The minimal time between two plans, in milliseconds
+        val minInterval: Long = 0,
+        // The distance the center can move without a new plan, in meters
+        val minDisplacement: Double = 0.0) {
+
+    init {
+        if (minInterval < 0)
+            throw IllegalArgumentException("The minimal interval of a re-center policy can't be negative!")
+        if (minDisplacement < 0)
+            throw IllegalArgumentException("The minimal displacement of a re-center policy can't be negative!")
+    }
+
+    companion object {
+        /**
+         * Re-plans on every new center, the default of a GeoQuery.
+         */
+        @JvmField
+        val IMMEDIATE = RecenterPolicy()
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (other == null || other !is RecenterPolicy) return false
+        return minInterval == other.minInterval && minDisplacement == other.minDisplacement
+    }
+
+    override fun hashCode() = 31 * minInterval.hashCode() + minDisplacement.hashCode()
+
+    override fun toString() = "RecenterPolicy(minInterval=$minInterval, minDisplacement=$minDisplacement)"
+}
@@ -0,0 +1,128 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.region.GeoRegion
+import org.imperiumlabs.geofirestore.util.GeoUtils
+import java.util.Collections
+import java.util.LinkedHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A SpatialKeyScheme caching the coverings planned by another scheme.
+ *
+ * The radius is rounded up to a bucket growing by RADIUS_BUCKET_RATIO, and the center is
+ * quantized to a cell CENTER_REFINE_BITS finer than the cells of the coverings for that radius.
+ * A cached covering is planned for the whole bucket: around the center of the cell, with the bucket
+ * radius plus the distance to the farthest corner of the cell, so it covers every circle sharing
+ * its key. Centers moving inside the same cell, as map UIs and vehicles do, reuse the covering
+ * for the price of a slightly larger circle.
+ *
+ * Keys are those of the delegate, the two schemes can read and write the same collection.
+ * Up to capacity coverings are kept, the least recently used ones are evicted first.
+ */
+class CachingKeyScheme @JvmOverloads constructor(
+        // The scheme planning the coverings
+        val delegate: SpatialKeyScheme,
+        // The maximal number of cached coverings
+        val capacity: Int = DEFAULT_CAPACITY) : SpatialKeyScheme {
+
+    companion object {
+        // The default maximal number of cached coverings
+        const val DEFAULT_CAPACITY = 64
+
+        // The ratio between the radii of two consecutive buckets
+        const val RADIUS_BUCKET_RATIO = 1.0625
+
+        // The number of bits the center cell is finer than the cells of the coverings
+        const val CENTER_REFINE_BITS = 8
+
+        // The finest center cell, the precision of packed geohashes
+        private const val MAX_CENTER_BITS = GeoHash.MAX_PACKED_PRECISION_BITS
+
+        // The radius of the first bucket, in meters
+        private const val MIN_BUCKET_RADIUS = 1.0
+    }
+
+    /*
+     * The key of a covering: the radius bucket and the center cell of centerBits bits
+     */
+    private data class PlanKey(val radiusBucket: Int, val centerBits: Int, val centerCell: Long)
+
+    private val plans = object : LinkedHashMap<PlanKey, Set<GeoHashQuery>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<PlanKey, Set<GeoHashQuery>>?) = size > capacity
+    }
+
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    init {
+        if (capacity < 1)
+            throw IllegalArgumentException("The capacity of a cache must be at least 1!")
+    }
+
+    /**
+     * @return The number of coverings found in the cache
+     */
+    val hitCount: Long
+        get() = hits.get()
+
+    /**
+     * @return The number of coverings planned by the delegate
+     */
+    val missCount: Long
+        get() = misses.get()
+
+    /**
+     * @return The number of cached coverings
+     */
+    val size: Int
+        get() = synchronized(plans) { plans.size }
+
+    /**
+     * Remove all the cached coverings, the counters are kept.
+     */
+    fun clear() = synchronized(plans) { plans.clear() }
+
+    override fun encode(latitude: Double, longitude: Double) = delegate.encode(latitude, longitude)
+
+    override fun keyFor(latitude: Double, longitude: Double) = delegate.keyFor(latitude, longitude)
+
+    override fun cellsOf(query: GeoHashQuery) = delegate.cellsOf(query)
+
+    override fun queriesForRegion(region: GeoRegion) = delegate.queriesForRegion(region)
+
+    override val maxCellLevel: Int
+        get() = delegate.maxCellLevel
+
+    override fun queryForCell(level: Int, column: Long, row: Long) = delegate.queryForCell(level, column, row)
+
+    override fun queriesAtLocation(location: GeoLocation, radius: Double): Set<GeoHashQuery> {
+        val radiusBucket = if (radius <= MIN_BUCKET_RADIUS) 0
+        else Math.ceil(Math.log(radius / MIN_BUCKET_RADIUS) / Math.log(RADIUS_BUCKET_RATIO)).toInt()
+        val bucketRadius = MIN_BUCKET_RADIUS * Math.pow(RADIUS_BUCKET_RATIO, radiusBucket.toDouble())
+        val centerBits = Math.min(Math.max(1, GeoHashQuery.Utils.bitsForBoundingBox(location, bucketRadius)) + CENTER_REFINE_BITS,
+                MAX_CENTER_BITS)
+        val centerCell = GeoHash.interleave(location.latitude, location.longitude, centerBits)
+        val key = PlanKey(radiusBucket, centerBits, centerCell)
+
+        val cached = synchronized(plans) { plans[key] }
+        if (cached != null) {
+            hits.incrementAndGet()
+            return cached
+        }
+        misses.incrementAndGet()
+
+        // Plan outside the lock, two threads missing the same key plan the same covering
+        val cell = DoubleArray(4)
+        GeoHash.decodeBits(centerCell, centerBits, cell, 0)
+        val centerLatitude = (cell[GeoHash.MIN_LATITUDE] + cell[GeoHash.MAX_LATITUDE]) / 2
+        val centerLongitude = (cell[GeoHash.MIN_LONGITUDE] + cell[GeoHash.MAX_LONGITUDE]) / 2
+        val planRadius = bucketRadius + GeoUtils.maxDistanceToBoundingBox(centerLatitude, centerLongitude,
+                cell[GeoHash.MIN_LATITUDE], cell[GeoHash.MIN_LONGITUDE], cell[GeoHash.MAX_LATITUDE], cell[GeoHash.MAX_LONGITUDE])
+        val plan = Collections.unmodifiableSet(delegate.queriesAtLocation(GeoLocation(centerLatitude, centerLongitude), planRadius))
+        synchronized(plans) { plans[key] = plan }
+        return plan
+    }
+
+    override fun toString() = "CachingKeyScheme(delegate=$delegate, capacity=$capacity)"
+}
@@ -0,0 +1,128 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.imperiumlabs.geofirestore.util.GeoUtils
+import java.util.Arrays
+
+/**
+ * The cost model of the COST_BASED planner of GeoHashKeyScheme.
+ *
+ * A covering costs rangeCost for every range, the listener and round-trip it needs, plus one
+ * for every document it reads outside the query area. Closing the gap between two ranges saves
+ * a range but reads the documents of the gap, so the planner closes every gap expected to hold
+ * fewer documents than rangeCost, and then the cheapest remaining ones until at most maxRanges remain.
+ *
+ * The documents of a gap are estimated by the densityHint, a UniformDensity unless the
+ * distribution of the collection is known.
+ */
+class CoveringCostModel @JvmOverloads constructor(
+        // The cost of one range, counted in document reads
+        val rangeCost: Double,
+        // The maximal number of ranges of a covering
+        val maxRanges: Int = DEFAULT_MAX_RANGES,
+        // The expected number of documents in a cell
+        val densityHint: DensityHint = UniformDensity(DEFAULT_DOCUMENTS_PER_SQUARE_KILOMETER)) {
+
+    /**
+     * Estimates how many documents of a collection lie inside a cell.
+     */
+    interface DensityHint {
+
+        /**
+         * @param minLatitude The southern edge of the cell
+         * @param minLongitude The western edge of the cell
+         * @param maxLatitude The northern edge of the cell
+         * @param maxLongitude The eastern edge of the cell
+         * @return The expected number of documents inside the cell
+         */
+        fun estimateDocuments(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double): Double
+    }
+
+    /**
+     * A DensityHint for documents spread evenly over the surface of the earth.
+     */
+    class UniformDensity(val documentsPerSquareKilometer: Double) : DensityHint {
+
+        init {
+            if (documentsPerSquareKilometer < 0)
+                throw IllegalArgumentException("The density can't be negative!")
+        }
+
+        override fun estimateDocuments(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double) =
+                documentsPerSquareKilometer *
+                        GeoUtils.boundingBoxArea(minLatitude, minLongitude, maxLatitude, maxLongitude) / 1e6
+
+        override fun toString() = "UniformDensity(documentsPerSquareKilometer=$documentsPerSquareKilometer)"
+    }
+
+    companion object {
+        // The default maximal number of ranges of a covering
+        const val DEFAULT_MAX_RANGES = 16
+
+        // The density of the default UniformDensity hint
+        const val DEFAULT_DOCUMENTS_PER_SQUARE_KILOMETER = 100.0
+
+        /**
+         * Every query is billed at least one document read: only gaps expected to be
+         * empty are closed, for metered clients.
+         */
+        @JvmField
+        val MINIMIZE_READS = CoveringCostModel(1.0, 64)
+
+        /**
+         * Listeners are expensive: a few coarse ranges, whatever they over-read.
+         */
+        @JvmField
+        val MINIMIZE_LISTENERS = CoveringCostModel(10000.0, 4)
+
+        /**
+         * A range is worth about twenty over-read documents.
+         */
+        @JvmField
+        val BALANCED = CoveringCostModel(20.0)
+    }
+
+    init {
+        if (rangeCost < 0)
+            throw IllegalArgumentException("The cost of a range can't be negative!")
+        if (maxRanges < 1)
+            throw IllegalArgumentException("A covering needs at least one range!")
+    }
+
+    /*
+     * Close the gaps between sorted, merged ranges whose documents cost less than the range they save,
+     * then the cheapest ones until at most maxRanges remain, or fewer ranges asked by the caller
+     */
+    internal fun closeGaps(ranges: KeyRangeList, maxRanges: Int = this.maxRanges) {
+        val gapCount = ranges.size - 1
+        if (gapCount < 1) return
+        val cell = DoubleArray(4)
+        val costs = DoubleArray(gapCount)
+        for (i in 0 until gapCount)
+            costs[i] = estimateDocuments(ranges.end(i), ranges.start(i + 1), ranges.bitCount, cell)
+        val order = Array(gapCount) { it }
+        Arrays.sort(order) { a, b -> java.lang.Double.compare(costs[a], costs[b]) }
+        val close = BooleanArray(gapCount)
+        var remaining = ranges.size
+        for (gap in order) {
+            if (costs[gap] >= rangeCost && remaining <= maxRanges) break
+            close[gap] = true
+            remaining--
+        }
+        ranges.closeGaps(close)
+    }
+
+    /*
+     * Estimate the documents of the keys in [start, end), keys being made of bitCount bits, right aligned
+     */
+    private fun estimateDocuments(start: Long, end: Long, bitCount: Int, cell: DoubleArray): Double {
+        var documents = 0.0
+        ZOrderRanges.forEachCell(start, end, bitCount) { bits, cellBits ->
+            GeoHash.decodeBits(bits, cellBits, cell, 0)
+            documents += densityHint.estimateDocuments(cell[GeoHash.MIN_LATITUDE], cell[GeoHash.MIN_LONGITUDE],
+                    cell[GeoHash.MAX_LATITUDE], cell[GeoHash.MAX_LONGITUDE])
+        }
+        return documents
+    }
+
+    override fun toString() = "CoveringCostModel(rangeCost=$rangeCost, maxRanges=$maxRanges, densityHint=$densityHint)"
+}
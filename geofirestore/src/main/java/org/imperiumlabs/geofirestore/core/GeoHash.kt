@@ -1,24 +1,41 @@
 package org.imperiumlabs.geofirestore.core
 
+import android.os.Build
+import androidx.annotation.RequiresApi
 import org.imperiumlabs.geofirestore.util.Base32Utils
-import org.imperiumlabs.geofirestore.util.Base32Utils.BITS
 import org.imperiumlabs.geofirestore.GeoLocation
 import java.util.Locale.US
-
-// TODO: 05/05/19 Test if makeGeoHash() work correctly
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.RecursiveAction
 
 /**
  * A GeoHash instance is used to generate and store geohash strings
+ *
+ * Hashes of up to MAX_PACKED_PRECISION characters are kept in their packed form
+ * and converted to a Base32 string only when geoHashString is first requested.
  */
 class GeoHash {
 
-    //The GeoHash String value
-    var geoHashString: String
-        private set
+    //The packed value of this GeoHash or NO_PACKED_VALUE if the precision is too big to pack
+    val packedValue: Long
+
+    //The GeoHash String value, created lazily from packedValue
+    private var hashString: String?
+
+    val geoHashString: String
+        get() {
+            var hash = hashString
+            if (hash == null) {
+                hash = toBase32(packedValue)
+                hashString = hash
+            }
+            return hash
+        }
 
     companion object {
         // The default precision of a geohash
-        private const val DEFAULT_PRECISION = 10
+        const val DEFAULT_PRECISION = 10
 
         // The maximal precision of a geohash
         const val MAX_PRECISION = 22
@@ -26,6 +43,538 @@ class GeoHash {
         // The maximal number of bits precision for a geohash
         const val MAX_PRECISION_BITS = MAX_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR
 
+        // The maximal precision of a geohash that fits in a packed Long
+        const val MAX_PACKED_PRECISION = 12
+
+        // The maximal number of bits precision for a packed geohash
+        const val MAX_PACKED_PRECISION_BITS = MAX_PACKED_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR
+
+        // Value used when a GeoHash can't be represented in packed form
+        const val NO_PACKED_VALUE = 0L
+
+        // The number of cells contained in a geohash one character longer
+        const val CHILD_COUNT = 1 shl Base32Utils.BITS_PER_BASE32_CHAR
+
+        // The number of coordinates encoded by a single task of the parallel batch encoders
+        const val PARALLEL_BATCH_SIZE = 1 shl 14
+
+        // The low bits of a packed geohash hold the precision, the high bits hold the hash
+        private const val PRECISION_BITS = 4
+        private const val PRECISION_MASK = (1L shl PRECISION_BITS) - 1
+
+        // Indices of the values written by decodeBounds
+        const val MIN_LATITUDE = 0
+        const val MIN_LONGITUDE = 1
+        const val MAX_LATITUDE = 2
+        const val MAX_LONGITUDE = 3
+
+        // Indices of the values written by decodeCenter
+        const val CENTER_LATITUDE = 0
+        const val CENTER_LONGITUDE = 1
+        const val LATITUDE_ERROR = 2
+        const val LONGITUDE_ERROR = 3
+
+        /**
+         * Encode a location into a packed geohash without allocating.
+         *
+         * The interleaved longitude/latitude bits are stored left aligned in the 60 high bits of
+         * the Long and the precision (number of characters) in the 4 low bits, so packed values of
+         * the same precision sort like their Base32 strings when compared as unsigned numbers.
+         * The encoding is bit for bit the same as the one used for the geohash strings.
+         *
+         * @param latitude The latitude in the range [-90, 90]
+         * @param longitude The longitude in the range [-180, 180]
+         * @param precision The number of Base32 characters in the range [1, MAX_PACKED_PRECISION]
+         * @return The packed geohash
+         * @throws IllegalArgumentException If the precision or the coordinates are not valid
+         */
+        fun encode(latitude: Double, longitude: Double, precision: Int): Long {
+            if (precision < 1 || precision > MAX_PACKED_PRECISION)
+                throw IllegalArgumentException("Precision of a packed GeoHash must be between 1 and $MAX_PACKED_PRECISION!")
+
+            if (!GeoLocation.coordinatesValid(latitude, longitude))
+                throw IllegalArgumentException(String.format(US, "Not valid location coordinates: [%f, %f]", latitude, longitude))
+
+            val bitCount = precision * Base32Utils.BITS_PER_BASE32_CHAR
+            return (interleave(latitude, longitude, bitCount) shl (java.lang.Long.SIZE - bitCount)) or precision.toLong()
+        }
+
+        /*
+         * Produce bitCount interleaved bits, right aligned; even bits (counting from the most
+         * significant one) refine the longitude, odd bits the latitude
+         */
+        internal fun interleave(latitude: Double, longitude: Double, bitCount: Int): Long {
+            // Longitude takes the first (most significant) bit, so it gets the extra bit when bitCount is odd
+            val longitudeIndex = quantize(longitude, -180.0, 180.0, (bitCount + 1) / 2)
+            val latitudeIndex = quantize(latitude, -90.0, 90.0, bitCount / 2)
+            return interleaveIndices(latitudeIndex, longitudeIndex, bitCount)
+        }
+
+        /*
+         * Merge a latitude and a longitude cell index into bitCount interleaved bits, right aligned
+         */
+        internal fun interleaveIndices(latitudeIndex: Long, longitudeIndex: Long, bitCount: Int) =
+                if (bitCount % 2 == 0) (spreadBits(longitudeIndex) shl 1) or spreadBits(latitudeIndex)
+                else spreadBits(longitudeIndex) or (spreadBits(latitudeIndex) shl 1)
+
+        /*
+         * Bisect the range [min, max] bits times and return the index of the cell containing value.
+         * A value equal to a mid point falls in the lower half, like the geohash strings always did
+         */
+        internal fun quantize(value: Double, min: Double, max: Double, bits: Int): Long {
+            var low = min
+            var high = max
+            var index = 0L
+            for (i in 0 until bits) {
+                val mid = (low + high) / 2
+                index = index shl 1
+                if (value > mid) {
+                    index = index or 1L
+                    low = mid
+                } else
+                    high = mid
+            }
+            return index
+        }
+
+        /**
+         * @param packed A packed geohash
+         * @return The number of Base32 characters of the packed geohash
+         */
+        fun precisionOf(packed: Long) = (packed and PRECISION_MASK).toInt()
+
+        /**
+         * @param packed A packed geohash
+         * @return The interleaved bits of the packed geohash, right aligned
+         */
+        fun bitsOf(packed: Long): Long {
+            val bitCount = precisionOf(packed) * Base32Utils.BITS_PER_BASE32_CHAR
+            return packed ushr (java.lang.Long.SIZE - bitCount)
+        }
+
+        /**
+         * Build a packed geohash from right aligned interleaved bits.
+         *
+         * @param bits The interleaved bits, right aligned
+         * @param precision The number of Base32 characters represented by bits
+         * @return The packed geohash
+         */
+        fun pack(bits: Long, precision: Int): Long {
+            if (precision < 1 || precision > MAX_PACKED_PRECISION)
+                throw IllegalArgumentException("Precision of a packed GeoHash must be between 1 and $MAX_PACKED_PRECISION!")
+            val bitCount = precision * Base32Utils.BITS_PER_BASE32_CHAR
+            return (bits shl (java.lang.Long.SIZE - bitCount)) or precision.toLong()
+        }
+
+        /**
+         * @param packed A packed geohash
+         * @param index The index of the character
+         * @return The Base32 value (0 to 31) of the character at index
+         */
+        fun valueAt(packed: Long, index: Int) =
+                ((packed ushr (java.lang.Long.SIZE - (index + 1) * Base32Utils.BITS_PER_BASE32_CHAR)) and 31L).toInt()
+
+        /**
+         * @param packed A packed geohash
+         * @param index The index of the character
+         * @return The Base32 character at index
+         */
+        fun charAt(packed: Long, index: Int) = Base32Utils.valueToBase32Char(valueAt(packed, index))
+
+        /**
+         * Write the Base32 characters of a packed geohash in a buffer.
+         *
+         * @param packed A packed geohash
+         * @param destination The buffer to write to
+         * @param offset The index of destination where the first character is written
+         * @return The number of characters written
+         */
+        fun writeBase32(packed: Long, destination: CharArray, offset: Int): Int {
+            val precision = precisionOf(packed)
+            for (i in 0 until precision)
+                destination[offset + i] = charAt(packed, i)
+            return precision
+        }
+
+        /**
+         * Convert a packed geohash to the Base32 string stored in Firestore.
+         *
+         * @param packed A packed geohash
+         * @return The geohash string
+         */
+        fun toBase32(packed: Long): String {
+            val buffer = CharArray(precisionOf(packed))
+            writeBase32(packed, buffer, 0)
+            return String(buffer)
+        }
+
+        /**
+         * Convert a Base32 geohash string to its packed form.
+         *
+         * @param hash A geohash string of at most MAX_PACKED_PRECISION characters
+         * @return The packed geohash
+         * @throws IllegalArgumentException If hash is not a valid geohash string or is too long
+         */
+        fun fromBase32(hash: CharSequence): Long {
+            if (hash.isEmpty() || hash.length > MAX_PACKED_PRECISION)
+                throw IllegalArgumentException("Can't pack the geoHashString: $hash")
+            return pack(Base32Utils.base32ToBits(hash, 0, hash.length), hash.length)
+        }
+
+        /**
+         * Decode the cell of a packed geohash into a caller supplied buffer.
+         *
+         * The values are written at offset + MIN_LATITUDE, MIN_LONGITUDE, MAX_LATITUDE and MAX_LONGITUDE.
+         *
+         * @param packed A packed geohash
+         * @param destination The buffer to write to, it must hold at least 4 values after offset
+         * @param offset The index of destination where the first value is written
+         */
+        fun decodeBounds(packed: Long, destination: DoubleArray, offset: Int) {
+            val bitCount = precisionOf(packed) * Base32Utils.BITS_PER_BASE32_CHAR
+            decodeBits(bitsOf(packed), bitCount, destination, offset)
+        }
+
+        /*
+         * Decode the cell of bitCount interleaved bits, right aligned, into a caller supplied buffer
+         */
+        internal fun decodeBits(bits: Long, bitCount: Int, destination: DoubleArray, offset: Int) {
+            // Longitude takes the first (most significant) bit, so it gets the extra bit when bitCount is odd
+            val longitudeBits = (bitCount + 1) / 2
+            val latitudeBits = bitCount / 2
+            val longitudeIndex = longitudeIndexOf(bits, bitCount)
+            val latitudeIndex = latitudeIndexOf(bits, bitCount)
+            val latitudeSize = 180.0 / (1L shl latitudeBits)
+            val longitudeSize = 360.0 / (1L shl longitudeBits)
+            destination[offset + MIN_LATITUDE] = -90.0 + latitudeIndex * latitudeSize
+            destination[offset + MIN_LONGITUDE] = -180.0 + longitudeIndex * longitudeSize
+            destination[offset + MAX_LATITUDE] = destination[offset + MIN_LATITUDE] + latitudeSize
+            destination[offset + MAX_LONGITUDE] = destination[offset + MIN_LONGITUDE] + longitudeSize
+        }
+
+        /**
+         * Decode the cell of a geohash string of any precision into a caller supplied buffer.
+         *
+         * @param hash A valid geohash string
+         * @param destination The buffer to write to, it must hold at least 4 values after offset
+         * @param offset The index of destination where the first value is written
+         * @see decodeBounds
+         */
+        fun decodeBounds(hash: CharSequence, destination: DoubleArray, offset: Int) {
+            var latMin = -90.0
+            var latMax = 90.0
+            var lonMin = -180.0
+            var lonMax = 180.0
+            var evenBit = true
+            for (i in 0 until hash.length) {
+                val value = Base32Utils.base32CharToValue(hash[i])
+                for (j in Base32Utils.BITS_PER_BASE32_CHAR - 1 downTo 0) {
+                    val bitSet = ((value shr j) and 1) == 1
+                    if (evenBit) {
+                        val mid = (lonMin + lonMax) / 2
+                        if (bitSet) lonMin = mid else lonMax = mid
+                    } else {
+                        val mid = (latMin + latMax) / 2
+                        if (bitSet) latMin = mid else latMax = mid
+                    }
+                    evenBit = !evenBit
+                }
+            }
+            destination[offset + MIN_LATITUDE] = latMin
+            destination[offset + MIN_LONGITUDE] = lonMin
+            destination[offset + MAX_LATITUDE] = latMax
+            destination[offset + MAX_LONGITUDE] = lonMax
+        }
+
+        /**
+         * Decode the center of the cell of a packed geohash and its error (half the cell size)
+         * into a caller supplied buffer.
+         *
+         * The values are written at offset + CENTER_LATITUDE, CENTER_LONGITUDE, LATITUDE_ERROR and LONGITUDE_ERROR.
+         *
+         * @param packed A packed geohash
+         * @param destination The buffer to write to, it must hold at least 4 values after offset
+         * @param offset The index of destination where the first value is written
+         */
+        fun decodeCenter(packed: Long, destination: DoubleArray, offset: Int) {
+            decodeBounds(packed, destination, offset)
+            boundsToCenter(destination, offset)
+        }
+
+        /**
+         * Decode the center of the cell of a geohash string of any precision and its error.
+         *
+         * @param hash A valid geohash string
+         * @param destination The buffer to write to, it must hold at least 4 values after offset
+         * @param offset The index of destination where the first value is written
+         * @see decodeCenter
+         */
+        fun decodeCenter(hash: CharSequence, destination: DoubleArray, offset: Int) {
+            decodeBounds(hash, destination, offset)
+            boundsToCenter(destination, offset)
+        }
+
+        /*
+         * Replace the bounds written by decodeBounds with the center and the error of the cell
+         */
+        private fun boundsToCenter(destination: DoubleArray, offset: Int) {
+            val minLatitude = destination[offset + MIN_LATITUDE]
+            val minLongitude = destination[offset + MIN_LONGITUDE]
+            val maxLatitude = destination[offset + MAX_LATITUDE]
+            val maxLongitude = destination[offset + MAX_LONGITUDE]
+            destination[offset + CENTER_LATITUDE] = (minLatitude + maxLatitude) / 2
+            destination[offset + CENTER_LONGITUDE] = (minLongitude + maxLongitude) / 2
+            destination[offset + LATITUDE_ERROR] = (maxLatitude - minLatitude) / 2
+            destination[offset + LONGITUDE_ERROR] = (maxLongitude - minLongitude) / 2
+        }
+
+        /*
+         * Extract the latitude cell index from bitCount interleaved bits, right aligned
+         */
+        internal fun latitudeIndexOf(bits: Long, bitCount: Int) =
+                compactBits(if (bitCount % 2 == 0) bits else bits ushr 1)
+
+        /*
+         * Extract the longitude cell index from bitCount interleaved bits, right aligned
+         */
+        internal fun longitudeIndexOf(bits: Long, bitCount: Int) =
+                compactBits(if (bitCount % 2 == 0) bits ushr 1 else bits)
+
+        /**
+         * Move a packed geohash by a number of cells of the same precision.
+         *
+         * Longitude wraps around at the antimeridian, latitude is clamped at the poles: stepping
+         * north of the northernmost row (or south of the southernmost one) stays in that row.
+         *
+         * @param packed A packed geohash
+         * @param latitudeSteps The number of cells to move north, negative to move south
+         * @param longitudeSteps The number of cells to move east, negative to move west
+         * @return The packed geohash of the cell reached
+         */
+        fun neighbor(packed: Long, latitudeSteps: Int, longitudeSteps: Int): Long {
+            val precision = precisionOf(packed)
+            val bitCount = precision * Base32Utils.BITS_PER_BASE32_CHAR
+            return pack(neighborBits(bitsOf(packed), bitCount, latitudeSteps, longitudeSteps), precision)
+        }
+
+        fun north(packed: Long) = neighbor(packed, 1, 0)
+
+        fun south(packed: Long) = neighbor(packed, -1, 0)
+
+        fun east(packed: Long) = neighbor(packed, 0, 1)
+
+        fun west(packed: Long) = neighbor(packed, 0, -1)
+
+        fun northEast(packed: Long) = neighbor(packed, 1, 1)
+
+        fun northWest(packed: Long) = neighbor(packed, 1, -1)
+
+        fun southEast(packed: Long) = neighbor(packed, -1, 1)
+
+        fun southWest(packed: Long) = neighbor(packed, -1, -1)
+
+        /*
+         * Same as neighbor but on bitCount interleaved bits, right aligned, of any bit precision
+         */
+        internal fun neighborBits(bits: Long, bitCount: Int, latitudeSteps: Int, longitudeSteps: Int): Long {
+            val latitudeBits = bitCount / 2
+            val longitudeBits = (bitCount + 1) / 2
+            val lastLatitudeIndex = (1L shl latitudeBits) - 1
+            val latitudeIndex = Math.min(lastLatitudeIndex, Math.max(0L, latitudeIndexOf(bits, bitCount) + latitudeSteps))
+            // The longitude cells count is a power of two, masking is a modulo also for negative indices
+            val longitudeIndex = (longitudeIndexOf(bits, bitCount) + longitudeSteps) and ((1L shl longitudeBits) - 1)
+            return interleaveIndices(latitudeIndex, longitudeIndex, bitCount)
+        }
+
+        /**
+         * @param packed A packed geohash with a precision of at least 2
+         * @return The packed geohash of the cell containing this one, one character shorter
+         */
+        fun parent(packed: Long): Long {
+            val precision = precisionOf(packed)
+            if (precision < 2)
+                throw IllegalArgumentException("A GeoHash of precision $precision has no parent")
+            return pack(bitsOf(packed) ushr Base32Utils.BITS_PER_BASE32_CHAR, precision - 1)
+        }
+
+        /**
+         * Write the CHILD_COUNT cells contained in a packed geohash, one character longer, in key order.
+         *
+         * @param packed A packed geohash with a precision less than MAX_PACKED_PRECISION
+         * @param destination The buffer to write to, it must hold at least CHILD_COUNT values after offset
+         * @param offset The index of destination where the first child is written
+         * @return The number of children written
+         */
+        fun children(packed: Long, destination: LongArray, offset: Int): Int {
+            val precision = precisionOf(packed)
+            if (precision >= MAX_PACKED_PRECISION)
+                throw IllegalArgumentException("A packed GeoHash of precision $precision has no children")
+            val base = bitsOf(packed) shl Base32Utils.BITS_PER_BASE32_CHAR
+            for (value in 0 until CHILD_COUNT)
+                destination[offset + value] = pack(base or value.toLong(), precision + 1)
+            return CHILD_COUNT
+        }
+
+        /**
+         * Write the CHILD_COUNT cells sharing the parent of a packed geohash, the geohash itself
+         * included, in key order. The siblings of a single character geohash are all the top level cells.
+         *
+         * @param packed A packed geohash
+         * @param destination The buffer to write to, it must hold at least CHILD_COUNT values after offset
+         * @param offset The index of destination where the first sibling is written
+         * @return The number of siblings written
+         */
+        fun siblings(packed: Long, destination: LongArray, offset: Int): Int {
+            if (precisionOf(packed) > 1)
+                return children(parent(packed), destination, offset)
+            for (value in 0 until CHILD_COUNT)
+                destination[offset + value] = pack(value.toLong(), 1)
+            return CHILD_COUNT
+        }
+
+        /*
+         * Spread the low 32 bits of value to the even bits (0, 2, 4...) of the result
+         */
+        internal fun spreadBits(value: Long): Long {
+            var x = value and 0x00000000FFFFFFFFL
+            x = (x or (x shl 16)) and 0x0000FFFF0000FFFFL
+            x = (x or (x shl 8)) and 0x00FF00FF00FF00FFL
+            x = (x or (x shl 4)) and 0x0F0F0F0F0F0F0F0FL
+            x = (x or (x shl 2)) and 0x3333333333333333L
+            x = (x or (x shl 1)) and 0x5555555555555555L
+            return x
+        }
+
+        /*
+         * Gather the even bits (0, 2, 4...) of value into its low 32 bits
+         */
+        internal fun compactBits(value: Long): Long {
+            var x = value and 0x5555555555555555L
+            x = (x or (x ushr 1)) and 0x3333333333333333L
+            x = (x or (x ushr 2)) and 0x0F0F0F0F0F0F0F0FL
+            x = (x or (x ushr 4)) and 0x00FF00FF00FF00FFL
+            x = (x or (x ushr 8)) and 0x0000FFFF0000FFFFL
+            x = (x or (x ushr 16)) and 0x00000000FFFFFFFFL
+            return x
+        }
+
+        /**
+         * Encode parallel arrays of coordinates into packed geohashes in one call.
+         *
+         * @param latitudes The latitudes in the range [-90, 90]
+         * @param longitudes The longitudes in the range [-180, 180], as many as the latitudes
+         * @param precision The number of Base32 characters in the range [1, MAX_PACKED_PRECISION]
+         * @param destination The buffer receiving the packed geohash of every coordinate, at the same index
+         * @throws IllegalArgumentException If the arrays don't match or a precision or coordinate is not valid
+         */
+        fun encodeAll(latitudes: DoubleArray, longitudes: DoubleArray, precision: Int, destination: LongArray) {
+            checkBatch(latitudes, longitudes, precision, destination.size)
+            encodeRange(latitudes, longitudes, precision, destination, 0, latitudes.size)
+        }
+
+        /**
+         * Encode parallel arrays of coordinates into packed geohashes, splitting large inputs
+         * in batches of PARALLEL_BATCH_SIZE coordinates executed by a ForkJoinPool.
+         *
+         * @param pool The pool executing the batches
+         * @see encodeAll
+         */
+        @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+        fun encodeAll(latitudes: DoubleArray, longitudes: DoubleArray, precision: Int, destination: LongArray, pool: ForkJoinPool) {
+            checkBatch(latitudes, longitudes, precision, destination.size)
+            pool.invoke(BatchEncodeTask(latitudes, longitudes, precision, destination, null, 0, latitudes.size))
+        }
+
+        /**
+         * Encode parallel arrays of coordinates into fixed width geohash strings written one after
+         * the other in a flat buffer: the geohash of coordinate i starts at index i * precision.
+         *
+         * @param latitudes The latitudes in the range [-90, 90]
+         * @param longitudes The longitudes in the range [-180, 180], as many as the latitudes
+         * @param precision The number of Base32 characters in the range [1, MAX_PACKED_PRECISION]
+         * @param destination The buffer receiving the characters, at least precision times the number of coordinates
+         * @throws IllegalArgumentException If the arrays don't match or a precision or coordinate is not valid
+         */
+        fun encodeAllToBase32(latitudes: DoubleArray, longitudes: DoubleArray, precision: Int, destination: CharArray) {
+            checkBatch(latitudes, longitudes, precision, destination.size / Math.max(precision, 1))
+            encodeRange(latitudes, longitudes, precision, destination, 0, latitudes.size)
+        }
+
+        /**
+         * Encode parallel arrays of coordinates into fixed width geohash strings, splitting large
+         * inputs in batches of PARALLEL_BATCH_SIZE coordinates executed by a ForkJoinPool.
+         *
+         * @param pool The pool executing the batches
+         * @see encodeAllToBase32
+         */
+        @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+        fun encodeAllToBase32(latitudes: DoubleArray, longitudes: DoubleArray, precision: Int, destination: CharArray, pool: ForkJoinPool) {
+            checkBatch(latitudes, longitudes, precision, destination.size / Math.max(precision, 1))
+            pool.invoke(BatchEncodeTask(latitudes, longitudes, precision, null, destination, 0, latitudes.size))
+        }
+
+        /*
+         * Validate the arguments of a batch encoding
+         */
+        private fun checkBatch(latitudes: DoubleArray, longitudes: DoubleArray, precision: Int, capacity: Int) {
+            if (precision < 1 || precision > MAX_PACKED_PRECISION)
+                throw IllegalArgumentException("Precision of a packed GeoHash must be between 1 and $MAX_PACKED_PRECISION!")
+            if (latitudes.size != longitudes.size)
+                throw IllegalArgumentException("Got ${latitudes.size} latitudes but ${longitudes.size} longitudes")
+            if (capacity < latitudes.size)
+                throw IllegalArgumentException("The destination can't hold ${latitudes.size} geohashes")
+        }
+
+        /*
+         * Encode the coordinates between from (inclusive) and to (exclusive) into packed geohashes
+         */
+        internal fun encodeRange(latitudes: DoubleArray, longitudes: DoubleArray, precision: Int,
+                                 destination: LongArray, from: Int, to: Int) {
+            val bitCount = precision * Base32Utils.BITS_PER_BASE32_CHAR
+            val shift = java.lang.Long.SIZE - bitCount
+            for (i in from until to) {
+                if (!GeoLocation.coordinatesValid(latitudes[i], longitudes[i]))
+                    throw IllegalArgumentException(String.format(US, "Not valid location coordinates at %d: [%f, %f]", i, latitudes[i], longitudes[i]))
+                destination[i] = (interleave(latitudes[i], longitudes[i], bitCount) shl shift) or precision.toLong()
+            }
+        }
+
+        /*
+         * Encode the coordinates between from (inclusive) and to (exclusive) into fixed width geohash strings
+         */
+        internal fun encodeRange(latitudes: DoubleArray, longitudes: DoubleArray, precision: Int,
+                                 destination: CharArray, from: Int, to: Int) {
+            val bitCount = precision * Base32Utils.BITS_PER_BASE32_CHAR
+            for (i in from until to) {
+                if (!GeoLocation.coordinatesValid(latitudes[i], longitudes[i]))
+                    throw IllegalArgumentException(String.format(US, "Not valid location coordinates at %d: [%f, %f]", i, latitudes[i], longitudes[i]))
+                val bits = interleave(latitudes[i], longitudes[i], bitCount)
+                val offset = i * precision
+                for (j in 0 until precision) {
+                    val value = (bits ushr ((precision - 1 - j) * Base32Utils.BITS_PER_BASE32_CHAR)) and 31L
+                    destination[offset + j] = Base32Utils.valueToBase32Char(value.toInt())
+                }
+            }
+        }
+
+        /**
+         * Compare a packed geohash with a geohash string (or a query bound) without converting it.
+         *
+         * @param packed A packed geohash
+         * @param other The string to compare with
+         * @return A negative number, zero or a positive number if the Base32 string of packed is
+         *         lexicographically less than, equal to or greater than other
+         */
+        fun compareToBase32(packed: Long, other: String): Int {
+            val precision = precisionOf(packed)
+            val length = Math.min(precision, other.length)
+            for (i in 0 until length) {
+                val c = charAt(packed, i)
+                if (c != other[i])
+                    return c - other[i]
+            }
+            return precision - other.length
+        }
     }
 
     //Constructor with latitude, longitude and DEFAULT_PRECISION
@@ -49,22 +598,60 @@ class GeoHash {
             throw IllegalArgumentException(String.format(US, "Not valid location coordinates: [%f, %f]", latitude, longitude))
 
         //The supplied data are valid... start creating the geo hash
-        this.geoHashString = makeGeoHash(latitude, longitude, precision)
+        if (precision <= MAX_PACKED_PRECISION) {
+            this.packedValue = encode(latitude, longitude, precision)
+            this.hashString = null
+        } else {
+            this.packedValue = NO_PACKED_VALUE
+            this.hashString = makeGeoHash(latitude, longitude, precision)
+        }
     }
 
     //Constructor with hash string
     constructor(hash: String) {
         if (!Base32Utils.isValidBase32String(hash))
             throw IllegalArgumentException("Not a valid geoHashString: $hash")
-        this.geoHashString = hash
+        this.packedValue = if (hash.length <= MAX_PACKED_PRECISION) fromBase32(hash) else NO_PACKED_VALUE
+        this.hashString = hash
     }
 
+    /**
+     * @return True if this GeoHash is stored in packed form
+     */
+    fun isPacked() = packedValue != NO_PACKED_VALUE
+
+    /**
+     * Decode the cell of this GeoHash into a caller supplied buffer.
+     *
+     * @param destination The buffer to write to, it must hold at least 4 values after offset
+     * @param offset The index of destination where the first value is written
+     * @see GeoHash.Companion.decodeBounds
+     */
+    fun decodeBounds(destination: DoubleArray, offset: Int) =
+            if (isPacked()) decodeBounds(packedValue, destination, offset)
+            else decodeBounds(geoHashString, destination, offset)
+
+    /**
+     * Decode the center of the cell of this GeoHash and its error into a caller supplied buffer.
+     *
+     * @param destination The buffer to write to, it must hold at least 4 values after offset
+     * @param offset The index of destination where the first value is written
+     * @see GeoHash.Companion.decodeCenter
+     */
+    fun decodeCenter(destination: DoubleArray, offset: Int) =
+            if (isPacked()) decodeCenter(packedValue, destination, offset)
+            else decodeCenter(geoHashString, destination, offset)
+
     /*
-     * Make the geohash string from supplied latitude, longitude, precision
+     * Make the geohash string from supplied latitude, longitude, precision;
+     * used only for the precisions that don't fit in a packed value
      */
     private fun makeGeoHash(latitude: Double, longitude: Double, precision: Int): String {
-        val lat = arrayOf(-90.0, 90.0)
-        val lon = arrayOf(-180.0, 180.0)
+        var latMin = -90.0
+        var latMax = 90.0
+        var lonMin = -180.0
+        var lonMax = 180.0
+        var evenBit = true
         val buffer = CharArray(precision)
 
         //Calculate the value for every letter until we obtain a word of length precision
@@ -72,24 +659,25 @@ class GeoHash {
             var value = 0
             //Cycle every bit from 0 to BITS_PER_BASE32_CHAR (4)
             for (j in 0 until Base32Utils.BITS_PER_BASE32_CHAR) {
-                val evenBit = (((i* Base32Utils.BITS_PER_BASE32_CHAR) + j) % 2) == 0
+                value = value shl 1
                 if (evenBit) {
                     //If it's in an even position we calculate the value based on the longitude
-                    val mid = (lon[0] + lon[1]) / 2
+                    val mid = (lonMin + lonMax) / 2
                     if (longitude > mid) {
-                        value = value or BITS[j]
-                        lon[0] = mid
+                        value = value or 1
+                        lonMin = mid
                     } else
-                        lon[1] = mid
+                        lonMax = mid
                 } else {
                     //If it's in an odd position we calculate the value based on the latitude
-                    val mid = (lat[0] + lat[1]) / 2
+                    val mid = (latMin + latMax) / 2
                     if (latitude > mid) {
-                        value = value or BITS[j]
-                        lat[0] = mid
+                        value = value or 1
+                        latMin = mid
                     } else
-                        lat[1] = mid
+                        latMax = mid
                 }
+                evenBit = !evenBit
             }
             buffer[i] = Base32Utils.valueToBase32Char(value)
         }
@@ -98,10 +686,40 @@ class GeoHash {
 
     override fun equals(other: Any?): Boolean {
         if (other == null || other !is GeoHash) return false
+        if (isPacked() && other.isPacked()) return packedValue == other.packedValue
         return geoHashString == other.geoHashString
     }
 
     override fun toString() = "GeoHash(geoHashString='$geoHashString')"
 
-    override fun hashCode() = this.geoHashString.hashCode()
-}
\ No newline at end of file
+    override fun hashCode() =
+            if (isPacked()) (packedValue xor (packedValue ushr 32)).toInt()
+            else this.geoHashString.hashCode()
+}
+
+/*
+ * Fork-join task splitting a batch encoding in halves until they are at most PARALLEL_BATCH_SIZE
+ * coordinates long; exactly one of packed and chars is the destination
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+private class BatchEncodeTask(private val latitudes: DoubleArray,
+                              private val longitudes: DoubleArray,
+                              private val precision: Int,
+                              private val packed: LongArray?,
+                              private val chars: CharArray?,
+                              private val from: Int,
+                              private val to: Int) : RecursiveAction() {
+
+    override fun compute() {
+        if (to - from <= GeoHash.PARALLEL_BATCH_SIZE) {
+            if (packed != null)
+                GeoHash.encodeRange(latitudes, longitudes, precision, packed, from, to)
+            else if (chars != null)
+                GeoHash.encodeRange(latitudes, longitudes, precision, chars, from, to)
+            return
+        }
+        val mid = (from + to) ushr 1
+        ForkJoinTask.invokeAll(BatchEncodeTask(latitudes, longitudes, precision, packed, chars, from, mid),
+                BatchEncodeTask(latitudes, longitudes, precision, packed, chars, mid, to))
+    }
+}
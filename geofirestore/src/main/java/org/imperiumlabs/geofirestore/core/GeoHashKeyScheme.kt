@@ -0,0 +1,102 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.region.GeoBoundingBox
+import org.imperiumlabs.geofirestore.region.GeoRegion
+import org.imperiumlabs.geofirestore.util.Base32Utils
+
+/**
+ * The geohash SpatialKeyScheme, storing DEFAULT_PRECISION characters geohashes.
+ * This is the scheme used by a GeoFirestore unless another one is supplied.
+ */
+class GeoHashKeyScheme @JvmOverloads constructor(
+        // The planner computing the coverings
+        val planner: Planner = Planner.CELL_PREFIXES,
+        // The maximal number of ranges of a covering, but a CELL_PREFIXES one
+        val maxRanges: Int = DEFAULT_MAX_RANGES,
+        // The cost model of a COST_BASED covering
+        val costModel: CoveringCostModel = CoveringCostModel.BALANCED) : SpatialKeyScheme {
+
+    /**
+     * A COST_BASED scheme planning the coverings with the given cost model, capped at its maxRanges ranges.
+     */
+    constructor(costModel: CoveringCostModel) : this(Planner.COST_BASED, costModel.maxRanges, costModel)
+
+    /**
+     * The ways a geohash covering can be planned.
+     */
+    enum class Planner {
+        /**
+         * Whole cells about as big as the radius, the ranges are geohash prefixes.
+         */
+        CELL_PREFIXES,
+
+        /**
+         * The exact Z-order decomposition of the bounding box of the circle, with finer cells,
+         * capped at maxRanges ranges.
+         */
+        Z_ORDER_RANGES,
+
+        /**
+         * The ranges of finer cells intersecting the circle, merged across the gaps that cost
+         * less to read than the ranges they save according to costModel, capped at the smallest
+         * of maxRanges and the maxRanges of costModel.
+         */
+        COST_BASED
+    }
+
+    companion object {
+        // The default maximal number of ranges of a Z_ORDER_RANGES covering
+        const val DEFAULT_MAX_RANGES = 8
+
+        @JvmField
+        val DEFAULT = GeoHashKeyScheme()
+    }
+
+    init {
+        if (maxRanges < 1)
+            throw IllegalArgumentException("A covering needs at least one range!")
+    }
+
+    override fun encode(latitude: Double, longitude: Double) =
+            GeoHash.encode(latitude, longitude, GeoHash.DEFAULT_PRECISION)
+
+    override fun queriesAtLocation(location: GeoLocation, radius: Double) =
+            when (planner) {
+                Planner.CELL_PREFIXES -> GeoHashQuery.queriesAtLocation(location, radius)
+                Planner.Z_ORDER_RANGES -> GeoHashQuery.zOrderQueriesAtLocation(location, radius, maxRanges)
+                Planner.COST_BASED -> GeoHashQuery.costBasedQueriesAtLocation(location, radius, costModel,
+                        Math.min(maxRanges, costModel.maxRanges))
+            }
+
+    override fun queriesForRegion(region: GeoRegion) =
+            when (region) {
+                is GeoBoundingBox -> GeoHashQuery.queriesForBoundingBox(region, maxRanges)
+                else -> GeoHashQuery.queriesForRegion(region, maxRanges)
+            }
+
+    override fun cellsOf(query: GeoHashQuery): DoubleArray {
+        val start = query.startKey()
+        val end = query.endKey()
+        var count = 0
+        ZOrderRanges.forEachCell(start, end, query.bitCount) { _, _ -> count++ }
+        val cells = DoubleArray(4 * count)
+        var offset = 0
+        ZOrderRanges.forEachCell(start, end, query.bitCount) { bits, cellBits ->
+            GeoHash.decodeBits(bits, cellBits, cells, offset)
+            offset += 4
+        }
+        return cells
+    }
+
+    // A level has as many bits for the latitude as for the longitude, both within the stored precision
+    override val maxCellLevel = GeoHash.DEFAULT_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR / 2
+
+    override fun queryForCell(level: Int, column: Long, row: Long): GeoHashQuery {
+        if (level < 1 || level > maxCellLevel)
+            throw IllegalArgumentException("The level of a cell must be between 1 and $maxCellLevel!")
+        return GeoHashQuery.queryForBits(GeoHash.interleaveIndices(row, column, 2 * level), 2 * level)
+    }
+
+    override fun toString() = "GeoHashKeyScheme(planner=$planner, maxRanges=$maxRanges, costModel=$costModel)"
+}
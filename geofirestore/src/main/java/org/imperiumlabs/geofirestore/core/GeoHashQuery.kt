@@ -1,14 +1,21 @@
 package org.imperiumlabs.geofirestore.core
 
 import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.region.GeoBoundingBox
+import org.imperiumlabs.geofirestore.region.GeoRegion
 import org.imperiumlabs.geofirestore.util.Base32Utils
 import org.imperiumlabs.geofirestore.util.Constants
 import org.imperiumlabs.geofirestore.util.GeoUtils
-import java.util.HashSet
+import java.util.ArrayList
+import java.util.Collections
 
 // FULLY TESTED
 
-class GeoHashQuery(var startValue: String, var endValue: String) {
+/**
+ * An immutable range of keys, queried with orderBy("g").startAt(startValue).endAt(endValue).
+ * Queries are ordered by startValue, then by endValue.
+ */
+class GeoHashQuery(val startValue: String, val endValue: String) : Comparable<GeoHashQuery> {
 
 
     object Utils {
@@ -33,11 +40,37 @@ class GeoHashQuery(var startValue: String, var endValue: String) {
             val bitsLongitudeSouth = (Math.floor(bitsLongitude(size, latitudeSouth)) * 2 - 1).toInt()
             return Math.min(bitsLatitude, Math.min(bitsLongitudeNorth, bitsLongitudeSouth))
         }
+
+        /*
+         * The number of bits of the finest cells at least as big as the bounding box of a region
+         */
+        fun bitsForRegion(region: GeoRegion): Int {
+            val latitudeSpan = region.maxLatitude - region.minLatitude
+            val longitudeSpan = if (region.minLongitude <= region.maxLongitude) region.maxLongitude - region.minLongitude
+            else 360 - (region.minLongitude - region.maxLongitude)
+            val bitsLatitude = if (latitudeSpan > 0) Math.floor(Math.log(180 / latitudeSpan) / Math.log(2.0)).toInt() else GeoHash.MAX_PRECISION_BITS
+            val bitsLongitude = if (longitudeSpan > 0) Math.floor(Math.log(360 / longitudeSpan) / Math.log(2.0)).toInt() else GeoHash.MAX_PRECISION_BITS
+            // Longitude takes the extra bit of an odd number of bits
+            return Math.max(0, Math.min(Math.min(bitsLatitude * 2 + 1, bitsLongitude * 2), GeoHash.MAX_PACKED_PRECISION_BITS))
+        }
     }
 
     companion object {
 
+        // The number of bits the Z-order planner refines the cells chosen by bitsForBoundingBox
+        private const val Z_ORDER_REFINE_BITS = 4
+
+        // The finest Z-order ranges are the stored geohashes
+        private const val Z_ORDER_MAX_BITS = GeoHash.DEFAULT_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR
+
+        // The number of bits the region planner refines the cells chosen by bitsForRegion
+        private const val REGION_REFINE_BITS = 8
+
+        // The number of bits the cost-based planner refines the cells chosen by bitsForBoundingBox
+        private const val COST_BASED_REFINE_BITS = 6
+
         fun queryForGeoHash(geohash: GeoHash, bits: Int): GeoHashQuery {
+            if (geohash.isPacked()) return queryForGeoHash(geohash.packedValue, bits)
             var hash = geohash.geoHashString
             val precision = (Math.ceil(bits.toDouble() / Base32Utils.BITS_PER_BASE32_CHAR)).toInt()
             if (hash.length < precision) return GeoHashQuery(hash, "$hash~")
@@ -54,9 +87,58 @@ class GeoHashQuery(var startValue: String, var endValue: String) {
             return GeoHashQuery(startHash, endHash)
         }
 
+        /*
+         * Same as queryForGeoHash(GeoHash, Int) but reads the characters straight from a packed geohash
+         */
+        fun queryForGeoHash(geohash: Long, bits: Int): GeoHashQuery {
+            val precision = (Math.ceil(bits.toDouble() / Base32Utils.BITS_PER_BASE32_CHAR)).toInt()
+            if (GeoHash.precisionOf(geohash) < precision) {
+                val hash = GeoHash.toBase32(geohash)
+                return GeoHashQuery(hash, "$hash~")
+            }
+            val buffer = CharArray(precision)
+            for (i in 0 until precision - 1)
+                buffer[i] = GeoHash.charAt(geohash, i)
+            val lastValue = GeoHash.valueAt(geohash, precision - 1)
+            val significantBits = bits - ((precision - 1) * Base32Utils.BITS_PER_BASE32_CHAR)
+            val unusedBits = Base32Utils.BITS_PER_BASE32_CHAR - significantBits
+            // delete unused bits
+            val startValue = (lastValue shr unusedBits) shl unusedBits
+            val endValue = startValue + (1 shl unusedBits)
+            buffer[precision - 1] = Base32Utils.valueToBase32Char(startValue)
+            val startHash = String(buffer)
+            val endHash = if (endValue > 31) {
+                String(buffer, 0, precision - 1) + "~"
+            } else {
+                buffer[precision - 1] = Base32Utils.valueToBase32Char(endValue)
+                String(buffer)
+            }
+            return GeoHashQuery(startHash, endHash)
+        }
+
+        /*
+         * Build the query for the cell made of bitCount interleaved bits, right aligned
+         */
+        fun queryForBits(bits: Long, bitCount: Int): GeoHashQuery {
+            val precision = (Math.ceil(bitCount.toDouble() / Base32Utils.BITS_PER_BASE32_CHAR)).toInt()
+            val unusedBits = precision * Base32Utils.BITS_PER_BASE32_CHAR - bitCount
+            return queryForGeoHash(GeoHash.pack(bits shl unusedBits, precision), bitCount)
+        }
+
+        /*
+         * Build the query for the keys in [start, end), keys being made of bitCount bits, right aligned
+         */
+        fun queryForRange(start: Long, end: Long, bitCount: Int): GeoHashQuery {
+            val precision = (Math.ceil(bitCount.toDouble() / Base32Utils.BITS_PER_BASE32_CHAR)).toInt()
+            val unusedBits = precision * Base32Utils.BITS_PER_BASE32_CHAR - bitCount
+            val startHash = GeoHash.toBase32(GeoHash.pack(start shl unusedBits, precision))
+            val endHash = if (end >= (1L shl bitCount)) "~" else GeoHash.toBase32(GeoHash.pack(end shl unusedBits, precision))
+            return GeoHashQuery(startHash, endHash)
+        }
+
         fun queriesAtLocation(location: GeoLocation, radius: Double): Set<GeoHashQuery> {
-            val queryBits = Math.max(1, Utils.bitsForBoundingBox(location, radius))
-            val geoHashPrecision = Math.ceil(queryBits.toDouble() / Base32Utils.BITS_PER_BASE32_CHAR).toInt()
+            // Packed geohashes hold at most MAX_PACKED_PRECISION_BITS, a coarser query is still a valid covering
+            val queryBits = Math.min(Math.max(1, Utils.bitsForBoundingBox(location, radius)), GeoHash.MAX_PACKED_PRECISION_BITS)
 
             val latitude = location.latitude
             val longitude = location.longitude
@@ -67,53 +149,280 @@ class GeoHashQuery(var startValue: String, var endValue: String) {
             val longitudeDeltaSouth = GeoUtils.distanceToLongitudeDegrees(radius, latitudeSouth)
             val longitudeDelta = Math.max(longitudeDeltaNorth, longitudeDeltaSouth)
 
-            val queries = HashSet<GeoHashQuery>()
-
-            val geoHash = GeoHash(latitude, longitude, geoHashPrecision)
-            val geoHashW = GeoHash(latitude, GeoUtils.wrapLongitude(longitude - longitudeDelta), geoHashPrecision)
-            val geoHashE = GeoHash(latitude, GeoUtils.wrapLongitude(longitude + longitudeDelta), geoHashPrecision)
-            val geoHashN = GeoHash(latitudeNorth, longitude, geoHashPrecision)
-            val geoHashNW = GeoHash(latitudeNorth, GeoUtils.wrapLongitude(longitude - longitudeDelta), geoHashPrecision)
-            val geoHashNE = GeoHash(latitudeNorth, GeoUtils.wrapLongitude(longitude + longitudeDelta), geoHashPrecision)
-            val geoHashS = GeoHash(latitudeSouth, longitude, geoHashPrecision)
-            val geoHashSW = GeoHash(latitudeSouth, GeoUtils.wrapLongitude(longitude - longitudeDelta), geoHashPrecision)
-            val geoHashSE = GeoHash(latitudeSouth, GeoUtils.wrapLongitude(longitude + longitudeDelta), geoHashPrecision)
-
-            queries.add(queryForGeoHash(geoHash, queryBits))
-            queries.add(queryForGeoHash(geoHashE, queryBits))
-            queries.add(queryForGeoHash(geoHashW, queryBits))
-            queries.add(queryForGeoHash(geoHashN, queryBits))
-            queries.add(queryForGeoHash(geoHashNE, queryBits))
-            queries.add(queryForGeoHash(geoHashNW, queryBits))
-            queries.add(queryForGeoHash(geoHashS, queryBits))
-            queries.add(queryForGeoHash(geoHashSE, queryBits))
-            queries.add(queryForGeoHash(geoHashSW, queryBits))
-
-            // Join queries
-            var didJoin: Boolean
-            do {
-                var query1: GeoHashQuery? = null
-                var query2: GeoHashQuery? = null
-                for (query in queries) {
-                    for (other in queries) {
-                        if (query != other && query.canJoinWith(other)) {
-                            query1 = query
-                            query2 = other
-                            break
-                        }
-                    }
+            // Latitude and longitude of a geohash are independent: find the rows and columns of the
+            // bounding box corners and walk the cells between them instead of encoding every corner
+            val latitudeBits = queryBits / 2
+            val longitudeBits = (queryBits + 1) / 2
+            val longitudeCells = 1L shl longitudeBits
+            val southRow = GeoHash.quantize(latitudeSouth, -90.0, 90.0, latitudeBits)
+            val northRow = GeoHash.quantize(latitudeNorth, -90.0, 90.0, latitudeBits)
+            val westColumn: Long
+            val columns: Long
+            if (longitudeDelta >= 180) {
+                westColumn = 0
+                columns = longitudeCells
+            } else {
+                westColumn = GeoHash.quantize(GeoUtils.wrapLongitude(longitude - longitudeDelta), -180.0, 180.0, longitudeBits)
+                val eastColumn = GeoHash.quantize(GeoUtils.wrapLongitude(longitude + longitudeDelta), -180.0, 180.0, longitudeBits)
+                // Going east from the west column, wrapping at the antimeridian
+                columns = ((eastColumn - westColumn) and (longitudeCells - 1)) + 1
+            }
+
+            // Adjacent cells are consecutive keys: collect them as key ranges, sort and merge them in one pass
+            val ranges = KeyRangeList(queryBits)
+            for (row in southRow..northRow) {
+                for (column in 0 until columns) {
+                    val cell = GeoHash.interleaveIndices(row, (westColumn + column) and (longitudeCells - 1), queryBits)
+                    ranges.add(cell, cell + 1)
                 }
-                didJoin = if (query1 != null && query2 != null) {
-                    queries.remove(query1)
-                    queries.remove(query2)
-                    queries.add(query1.joinWith(query2))
-                    true
+            }
+            ranges.sortAndMerge()
+            return ranges.toQueries()
+        }
+
+        /*
+         * The number of characters of a bound, without the "~" of a successor
+         */
+        private fun boundLength(bound: String) = if (bound.endsWith("~")) bound.length - 1 else bound.length
+
+        /*
+         * The key of a bound made of bitCount bits, right aligned; a bound ending with "~" is the
+         * successor of its prefix
+         */
+        private fun boundKey(bound: String, bitCount: Int): Long {
+            val length = boundLength(bound)
+            var key = Base32Utils.base32ToBits(bound, 0, length)
+            if (length < bound.length) key++
+            return key shl (bitCount - length * Base32Utils.BITS_PER_BASE32_CHAR)
+        }
+
+        /**
+         * Merge the overlapping or adjacent queries of a collection.
+         *
+         * Queries of different precisions, such as the coverings of circles of different radii,
+         * are merged as key ranges of the finest precision, so every merged query has bounds of
+         * a single precision.
+         *
+         * @param queries The queries to merge
+         * @return The merged queries, sorted in key order
+         */
+        fun coalesce(queries: Collection<GeoHashQuery>): List<GeoHashQuery> {
+            var bitCount = 0
+            for (query in queries)
+                bitCount = Math.max(bitCount, query.bitCount)
+            if (bitCount > GeoHash.MAX_PACKED_PRECISION_BITS) return coalesceStrings(queries)
+            val ranges = KeyRangeList(bitCount)
+            for (query in queries)
+                ranges.add(boundKey(query.startValue, bitCount), boundKey(query.endValue, bitCount))
+            ranges.sortAndMerge()
+            return ArrayList(ranges.toQueries())
+        }
+
+        /*
+         * Merge the queries too long for a Long key, only those whose bounds have the same precision
+         */
+        private fun coalesceStrings(queries: Collection<GeoHashQuery>): List<GeoHashQuery> {
+            val sorted = ArrayList(queries)
+            Collections.sort(sorted)
+            val merged = ArrayList<GeoHashQuery>(sorted.size)
+            for (query in sorted) {
+                val last = if (merged.isEmpty()) null else merged[merged.size - 1]
+                if (last != null && query.startValue <= last.endValue && query.bitCount == last.bitCount &&
+                        query.startValue.length == last.startValue.length) {
+                    if (query.endValue > last.endValue)
+                        merged[merged.size - 1] = GeoHashQuery(last.startValue, query.endValue)
                 } else {
-                    false
+                    merged.add(query)
                 }
-            } while (didJoin)
+            }
+            return merged
+        }
+
+        /**
+         * Plan the Z-order ranges covering the bounding box of a circle.
+         *
+         * The box is decomposed exactly into ranges of cells a few bits finer than the ones used by
+         * queriesAtLocation, then the smallest gaps between ranges are closed until at most
+         * maxRanges remain.
+         *
+         * @param location The center of the circle
+         * @param radius The radius of the circle, in meters
+         * @param maxRanges The maximal number of ranges
+         * @return The ranges to query, in key order
+         */
+        fun zOrderQueriesAtLocation(location: GeoLocation, radius: Double, maxRanges: Int): Set<GeoHashQuery> {
+            val bits = Math.min(Math.max(1, Utils.bitsForBoundingBox(location, radius)) + Z_ORDER_REFINE_BITS, Z_ORDER_MAX_BITS)
+            val latitudeDegrees = radius / Constants.METERS_PER_DEGREE_LATITUDE
+            val latitudeNorth = Math.min(90.0, location.latitude + latitudeDegrees)
+            val latitudeSouth = Math.max(-90.0, location.latitude - latitudeDegrees)
+            val longitudeDelta = Math.max(
+                    GeoUtils.distanceToLongitudeDegrees(radius, latitudeNorth),
+                    GeoUtils.distanceToLongitudeDegrees(radius, latitudeSouth))
+            return if (longitudeDelta >= 180)
+                queriesForBoundingBox(latitudeSouth, -180.0, latitudeNorth, 180.0, bits, maxRanges)
+            else
+                queriesForBoundingBox(latitudeSouth, GeoUtils.wrapLongitude(location.longitude - longitudeDelta),
+                        latitudeNorth, GeoUtils.wrapLongitude(location.longitude + longitudeDelta), bits, maxRanges)
+        }
+
+        /**
+         * Plan the ranges covering a circle with the cheapest covering of a cost model.
+         *
+         * The cells a few bits finer than the ones used by queriesAtLocation that intersect the
+         * circle are merged into the finest ranges, then the gaps between them are closed when
+         * the documents they are expected to hold cost less than the ranges they save.
+         *
+         * @param location The center of the circle
+         * @param radius The radius of the circle, in meters
+         * @param costModel The cost of ranges and over-read documents
+         * @param maxRanges The maximal number of ranges, at most the maxRanges of the cost model
+         * @return The ranges to query, in key order
+         */
+        fun costBasedQueriesAtLocation(location: GeoLocation, radius: Double, costModel: CoveringCostModel,
+                                       maxRanges: Int = costModel.maxRanges): Set<GeoHashQuery> {
+            val bits = Math.min(Math.max(1, Utils.bitsForBoundingBox(location, radius)) + COST_BASED_REFINE_BITS, Z_ORDER_MAX_BITS)
+            val latitudeDegrees = radius / Constants.METERS_PER_DEGREE_LATITUDE
+            val latitudeNorth = Math.min(90.0, location.latitude + latitudeDegrees)
+            val latitudeSouth = Math.max(-90.0, location.latitude - latitudeDegrees)
+            val longitudeDelta = Math.max(
+                    GeoUtils.distanceToLongitudeDegrees(radius, latitudeNorth),
+                    GeoUtils.distanceToLongitudeDegrees(radius, latitudeSouth))
+
+            val latitudeBits = bits / 2
+            val longitudeBits = (bits + 1) / 2
+            val longitudeCells = 1L shl longitudeBits
+            val southRow = GeoHash.quantize(latitudeSouth, -90.0, 90.0, latitudeBits)
+            val northRow = GeoHash.quantize(latitudeNorth, -90.0, 90.0, latitudeBits)
+            val westColumn: Long
+            val columns: Long
+            if (longitudeDelta >= 180) {
+                westColumn = 0
+                columns = longitudeCells
+            } else {
+                westColumn = GeoHash.quantize(GeoUtils.wrapLongitude(location.longitude - longitudeDelta), -180.0, 180.0, longitudeBits)
+                val eastColumn = GeoHash.quantize(GeoUtils.wrapLongitude(location.longitude + longitudeDelta), -180.0, 180.0, longitudeBits)
+                columns = ((eastColumn - westColumn) and (longitudeCells - 1)) + 1
+            }
+
+            // Only the cells of the bounding box reaching into the circle are needed
+            val ranges = KeyRangeList(bits)
+            val cell = DoubleArray(4)
+            for (row in southRow..northRow) {
+                for (column in 0 until columns) {
+                    val key = GeoHash.interleaveIndices(row, (westColumn + column) and (longitudeCells - 1), bits)
+                    GeoHash.decodeBits(key, bits, cell, 0)
+                    if (GeoUtils.distanceToBoundingBox(location.latitude, location.longitude,
+                                    cell[GeoHash.MIN_LATITUDE], cell[GeoHash.MIN_LONGITUDE],
+                                    cell[GeoHash.MAX_LATITUDE], cell[GeoHash.MAX_LONGITUDE]) <= radius)
+                        ranges.add(key, key + 1)
+                }
+            }
+            ranges.sortAndMerge()
+            costModel.closeGaps(ranges, maxRanges)
+            return ranges.toQueries()
+        }
+
+        /**
+         * Plan the ranges covering a region.
+         *
+         * The cells of the level chosen by bitsForRegion overlapping the bounding box of the region
+         * are split in halves while they cross the border of the region, at most REGION_REFINE_BITS
+         * times; the cells inside the region or at the finest level are kept. The smallest gaps
+         * between the ranges are then closed until at most maxRanges remain.
+         *
+         * @param region The region to cover
+         * @param maxRanges The maximal number of ranges
+         * @return The ranges to query, in key order
+         */
+        fun queriesForRegion(region: GeoRegion, maxRanges: Int): Set<GeoHashQuery> {
+            val startBits = Math.min(Utils.bitsForRegion(region), Z_ORDER_MAX_BITS)
+            val maxBits = Math.min(startBits + REGION_REFINE_BITS, Z_ORDER_MAX_BITS)
+            val latitudeBits = startBits / 2
+            val longitudeBits = (startBits + 1) / 2
+            val longitudeCells = 1L shl longitudeBits
+            val southRow = GeoHash.quantize(region.minLatitude, -90.0, 90.0, latitudeBits)
+            val northRow = GeoHash.quantize(region.maxLatitude, -90.0, 90.0, latitudeBits)
+            val westColumn: Long
+            val columns: Long
+            if (region.minLongitude == -180.0 && region.maxLongitude == 180.0) {
+                westColumn = 0
+                columns = longitudeCells
+            } else {
+                westColumn = GeoHash.quantize(region.minLongitude, -180.0, 180.0, longitudeBits)
+                val eastColumn = GeoHash.quantize(region.maxLongitude, -180.0, 180.0, longitudeBits)
+                columns = ((eastColumn - westColumn) and (longitudeCells - 1)) + 1
+            }
 
-            return queries
+            val ranges = KeyRangeList(maxBits)
+            val cell = DoubleArray(4)
+            for (row in southRow..northRow)
+                for (column in 0 until columns)
+                    coverRegion(region, GeoHash.interleaveIndices(row, (westColumn + column) and (longitudeCells - 1), startBits),
+                            startBits, maxBits, cell, ranges)
+            ranges.sortAndMerge()
+            ranges.capTo(maxRanges)
+            return ranges.toQueries()
+        }
+
+        /*
+         * Add the ranges of the cell of bitCount bits inside the region, splitting it while it crosses the border
+         */
+        private fun coverRegion(region: GeoRegion, bits: Long, bitCount: Int, maxBits: Int, cell: DoubleArray, ranges: KeyRangeList) {
+            GeoHash.decodeBits(bits, bitCount, cell, 0)
+            val relation = region.relate(cell[GeoHash.MIN_LATITUDE], cell[GeoHash.MIN_LONGITUDE],
+                    cell[GeoHash.MAX_LATITUDE], cell[GeoHash.MAX_LONGITUDE])
+            if (relation == GeoRegion.Relation.DISJOINT) return
+            if (relation == GeoRegion.Relation.INSIDE || bitCount >= maxBits) {
+                val shift = maxBits - bitCount
+                ranges.add(bits shl shift, (bits + 1) shl shift)
+                return
+            }
+            coverRegion(region, bits shl 1, bitCount + 1, maxBits, cell, ranges)
+            coverRegion(region, (bits shl 1) or 1L, bitCount + 1, maxBits, cell, ranges)
+        }
+
+        /**
+         * Plan the Z-order ranges covering a bounding box, with cells Z_ORDER_REFINE_BITS finer than
+         * the ones chosen by bitsForRegion.
+         *
+         * @param box The box to cover
+         * @param maxRanges The maximal number of ranges
+         * @return The ranges to query, in key order
+         */
+        fun queriesForBoundingBox(box: GeoBoundingBox, maxRanges: Int) =
+                queriesForBoundingBox(box.minLatitude, box.minLongitude, box.maxLatitude, box.maxLongitude,
+                        Math.min(Utils.bitsForRegion(box) + Z_ORDER_REFINE_BITS, Z_ORDER_MAX_BITS), maxRanges)
+
+        /**
+         * Plan the Z-order ranges covering a bounding box, using cells of the given number of bits.
+         * A box whose minLongitude is greater than its maxLongitude crosses the antimeridian.
+         *
+         * @param minLatitude The southern edge of the box
+         * @param minLongitude The western edge of the box
+         * @param maxLatitude The northern edge of the box
+         * @param maxLongitude The eastern edge of the box
+         * @param bits The number of bits of the cells
+         * @param maxRanges The maximal number of ranges
+         * @return The ranges to query, in key order
+         */
+        fun queriesForBoundingBox(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double,
+                                  bits: Int, maxRanges: Int): Set<GeoHashQuery> {
+            val latitudeBits = bits / 2
+            val longitudeBits = (bits + 1) / 2
+            val southRow = GeoHash.quantize(minLatitude, -90.0, 90.0, latitudeBits)
+            val northRow = GeoHash.quantize(maxLatitude, -90.0, 90.0, latitudeBits)
+            val westColumn = GeoHash.quantize(minLongitude, -180.0, 180.0, longitudeBits)
+            val eastColumn = GeoHash.quantize(maxLongitude, -180.0, 180.0, longitudeBits)
+            val ranges = KeyRangeList(bits)
+            if (minLongitude <= maxLongitude) {
+                ZOrderRanges.addBox(southRow, northRow, westColumn, eastColumn, bits, ranges)
+            } else {
+                ZOrderRanges.addBox(southRow, northRow, westColumn, (1L shl longitudeBits) - 1, bits, ranges)
+                ZOrderRanges.addBox(southRow, northRow, 0, eastColumn, bits, ranges)
+            }
+            ranges.sortAndMerge()
+            ranges.capTo(maxRanges)
+            return ranges.toQueries()
         }
     }
 
@@ -142,11 +451,48 @@ class GeoHashQuery(var startValue: String, var endValue: String) {
                 else -> throw IllegalArgumentException("Can't join these two queries: $this, $other")
             }
 
+    /*
+     * The number of bits of the keys of the range, those of the characters of the longest bound
+     */
+    internal val bitCount: Int
+        get() = Math.max(startValue.length, boundLength(endValue)) * Base32Utils.BITS_PER_BASE32_CHAR
+
+    /*
+     * The first key of the range, bitCount bits right aligned
+     */
+    internal fun startKey() = boundKey(startValue, bitCount)
+
+    /*
+     * The key following the range, bitCount bits right aligned; an endValue ending with "~"
+     * is the successor of its prefix
+     */
+    internal fun endKey() = boundKey(endValue, bitCount)
+
     fun containsGeoHash(hash: GeoHash): Boolean {
+        if (hash.isPacked()) return containsGeoHash(hash.packedValue)
         val hashStr = hash.geoHashString
         return this.startValue <= hashStr && this.endValue > hashStr
     }
 
+    fun containsGeoHash(packed: Long) =
+            GeoHash.compareToBase32(packed, this.startValue) >= 0 &&
+                    GeoHash.compareToBase32(packed, this.endValue) < 0
+
+    /**
+     * Tests whether a key stored in the "g" field is in the range.
+     */
+    fun containsKey(key: String) = this.startValue <= key && this.endValue > key
+
+    /**
+     * Tests whether every key of another range is in this one.
+     */
+    fun containsQuery(other: GeoHashQuery) = other.isSuperQuery(this)
+
+    override fun compareTo(other: GeoHashQuery): Int {
+        val startCompare = startValue.compareTo(other.startValue)
+        return if (startCompare != 0) startCompare else endValue.compareTo(other.endValue)
+    }
+
     override fun equals(other: Any?): Boolean {
         if (other == null || other !is GeoHashQuery) return false
         if (endValue != other.endValue || startValue != other.startValue) return false
@@ -0,0 +1,242 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.region.GeoCircle
+import org.imperiumlabs.geofirestore.region.GeoRegion
+import org.imperiumlabs.geofirestore.util.Base32Utils
+import java.util.Locale.US
+
+/**
+ * A SpatialKeyScheme ordering the cells of a latitude/longitude grid along a Hilbert curve.
+ *
+ * The grid has 2^order columns and 2^order rows and every cell is keyed with its index on the
+ * curve, written in Base32 like a geohash. Unlike the Z-order of geohashes, consecutive cells
+ * on a Hilbert curve are always neighbors, so a covering made of small cells merges into
+ * fewer and tighter ranges.
+ *
+ * Coverings start from the cells about as big as the radius, or as the bounding box of a region,
+ * refine the cells crossing the border of the circle for REFINE_LEVELS levels (REGION_REFINE_LEVELS
+ * for other regions), and close the smallest gaps between the resulting ranges until at most
+ * maxRanges remain.
+ */
+class HilbertKeyScheme @JvmOverloads constructor(
+        // The number of bits of each axis of the grid, in the range [1, MAX_ORDER]
+        val order: Int = DEFAULT_ORDER,
+        // The maximal number of ranges of a covering
+        val maxRanges: Int = DEFAULT_MAX_RANGES) : SpatialKeyScheme {
+
+    companion object {
+        // The default order, 50 bits keys stored in 10 characters
+        const val DEFAULT_ORDER = 25
+
+        // The maximal order, keys must fit in a packed geohash
+        const val MAX_ORDER = GeoHash.MAX_PACKED_PRECISION_BITS / 2
+
+        // The default maximal number of ranges of a covering
+        const val DEFAULT_MAX_RANGES = 8
+
+        // The number of levels the cells crossing the border of a circle are refined
+        private const val REFINE_LEVELS = 2
+
+        // The number of levels the cells crossing the border of a region are refined
+        private const val REGION_REFINE_LEVELS = 4
+
+        /**
+         * Convert the cell at column x and row y of a grid of 2^order by 2^order cells
+         * to its index on the Hilbert curve.
+         *
+         * @param order The number of bits of each axis
+         * @param x The column of the cell
+         * @param y The row of the cell
+         * @return The index of the cell on the curve, 2 * order bits
+         */
+        fun xyToIndex(order: Int, x: Long, y: Long): Long {
+            val last = (1L shl order) - 1
+            var column = x
+            var row = y
+            var index = 0L
+            var s = 1L shl (order - 1)
+            while (s > 0) {
+                val rx = if ((column and s) != 0L) 1L else 0L
+                val ry = if ((row and s) != 0L) 1L else 0L
+                index += s * s * ((3 * rx) xor ry)
+                // Rotate the quadrant so the curve keeps the same orientation at the next level
+                if (ry == 0L) {
+                    if (rx == 1L) {
+                        column = last - column
+                        row = last - row
+                    }
+                    val swap = column
+                    column = row
+                    row = swap
+                }
+                s = s shr 1
+            }
+            return index
+        }
+
+        /**
+         * Convert an index on the Hilbert curve of a grid of 2^order by 2^order cells
+         * to the column and row of its cell.
+         *
+         * @param order The number of bits of each axis
+         * @param index The index of the cell on the curve, 2 * order bits
+         * @param destination The buffer receiving the column at 0 and the row at 1
+         */
+        fun indexToXy(order: Int, index: Long, destination: LongArray) {
+            val side = 1L shl order
+            var remaining = index
+            var column = 0L
+            var row = 0L
+            var s = 1L
+            while (s < side) {
+                val rx = 1L and (remaining / 2)
+                val ry = 1L and (remaining xor rx)
+                // Undo the rotation of the quadrant, from the finest level up
+                if (ry == 0L) {
+                    if (rx == 1L) {
+                        column = s - 1 - column
+                        row = s - 1 - row
+                    }
+                    val swap = column
+                    column = row
+                    row = swap
+                }
+                column += s * rx
+                row += s * ry
+                remaining /= 4
+                s = s shl 1
+            }
+            destination[0] = column
+            destination[1] = row
+        }
+    }
+
+    // The number of Base32 characters of a key and the padding bits after the index
+    private val precision: Int
+    private val unusedBits: Int
+
+    init {
+        if (order < 1 || order > MAX_ORDER)
+            throw IllegalArgumentException("The order of a HilbertKeyScheme must be between 1 and $MAX_ORDER!")
+        if (maxRanges < 1)
+            throw IllegalArgumentException("A covering needs at least one range!")
+        precision = (2 * order + Base32Utils.BITS_PER_BASE32_CHAR - 1) / Base32Utils.BITS_PER_BASE32_CHAR
+        unusedBits = precision * Base32Utils.BITS_PER_BASE32_CHAR - 2 * order
+    }
+
+    override fun encode(latitude: Double, longitude: Double): Long {
+        if (!GeoLocation.coordinatesValid(latitude, longitude))
+            throw IllegalArgumentException(String.format(US, "Not valid location coordinates: [%f, %f]", latitude, longitude))
+        val column = GeoHash.quantize(longitude, -180.0, 180.0, order)
+        val row = GeoHash.quantize(latitude, -90.0, 90.0, order)
+        return GeoHash.pack(xyToIndex(order, column, row) shl unusedBits, precision)
+    }
+
+    override fun queriesAtLocation(location: GeoLocation, radius: Double): Set<GeoHashQuery> {
+        val circle = GeoCircle(location, radius)
+        // Start from the level whose cells are at least as big as the radius
+        val bitsLatitude = GeoHashQuery.Utils.bitsLatitude(radius)
+        val bitsLongitude = Math.min(
+                GeoHashQuery.Utils.bitsLongitude(radius, circle.maxLatitude),
+                GeoHashQuery.Utils.bitsLongitude(radius, circle.minLatitude))
+        val level = Math.max(0, Math.min(order, Math.floor(Math.min(bitsLatitude, bitsLongitude)).toInt()))
+        return cover(circle, level, Math.min(order, level + REFINE_LEVELS))
+    }
+
+    override fun queriesForRegion(region: GeoRegion): Set<GeoHashQuery> {
+        // Both axes of a level have the same number of bits, the latitude bits of a geohash level
+        val level = Math.min(order, GeoHashQuery.Utils.bitsForRegion(region) / 2)
+        return cover(region, level, Math.min(order, level + REGION_REFINE_LEVELS))
+    }
+
+    /*
+     * Cover a region starting from the cells of the given level overlapping its bounding box
+     */
+    private fun cover(region: GeoRegion, level: Int, maxLevel: Int): Set<GeoHashQuery> {
+        val cells = 1L shl level
+        val southRow = GeoHash.quantize(region.minLatitude, -90.0, 90.0, level)
+        val northRow = GeoHash.quantize(region.maxLatitude, -90.0, 90.0, level)
+        val westColumn: Long
+        val columns: Long
+        if (region.minLongitude == -180.0 && region.maxLongitude == 180.0) {
+            westColumn = 0
+            columns = cells
+        } else {
+            westColumn = GeoHash.quantize(region.minLongitude, -180.0, 180.0, level)
+            val eastColumn = GeoHash.quantize(region.maxLongitude, -180.0, 180.0, level)
+            columns = ((eastColumn - westColumn) and (cells - 1)) + 1
+        }
+
+        val ranges = KeyRangeList(2 * order)
+        for (row in southRow..northRow)
+            for (column in 0 until columns)
+                cover(region, level, maxLevel, (westColumn + column) and (cells - 1), row, ranges)
+        ranges.sortAndMerge()
+        ranges.capTo(maxRanges)
+        return ranges.toQueries()
+    }
+
+    /*
+     * Add the ranges of the cell at (column, row) of the given level overlapping the region,
+     * refining the cells crossing its border until maxLevel
+     */
+    private fun cover(region: GeoRegion, level: Int, maxLevel: Int, column: Long, row: Long, ranges: KeyRangeList) {
+        val latitudeSize = 180.0 / (1L shl level)
+        val longitudeSize = 360.0 / (1L shl level)
+        val minLatitude = -90.0 + row * latitudeSize
+        val minLongitude = -180.0 + column * longitudeSize
+        val relation = region.relate(minLatitude, minLongitude, minLatitude + latitudeSize, minLongitude + longitudeSize)
+        if (relation == GeoRegion.Relation.DISJOINT)
+            return
+        if (relation == GeoRegion.Relation.INSIDE || level >= maxLevel) {
+            // All the cells inside a quadrant are consecutive on the curve
+            val shift = order - level
+            val first = xyToIndex(order, column shl shift, row shl shift)
+            val start = (first ushr (2 * shift)) shl (2 * shift)
+            ranges.add(start, start + (1L shl (2 * shift)))
+            return
+        }
+        for (child in 0 until 4)
+            cover(region, level + 1, maxLevel, (column shl 1) or (child and 1).toLong(), (row shl 1) or (child shr 1).toLong(), ranges)
+    }
+
+    override fun cellsOf(query: GeoHashQuery): DoubleArray {
+        val end = query.endKey() ushr unusedBits
+        var cells = DoubleArray(32)
+        var count = 0
+        val xy = LongArray(2)
+        var index = query.startKey() ushr unusedBits
+        while (index < end) {
+            // The largest quadrant starting at index and ending before end
+            var shift = if (index == 0L) order else Math.min(order, java.lang.Long.numberOfTrailingZeros(index) / 2)
+            while ((1L shl (2 * shift)) > end - index) shift--
+            indexToXy(order, index, xy)
+            val level = order - shift
+            val latitudeSize = 180.0 / (1L shl level)
+            val longitudeSize = 360.0 / (1L shl level)
+            if (4 * count == cells.size) cells = cells.copyOf(cells.size * 2)
+            val offset = 4 * count
+            cells[offset + GeoHash.MIN_LATITUDE] = -90.0 + (xy[1] ushr shift) * latitudeSize
+            cells[offset + GeoHash.MIN_LONGITUDE] = -180.0 + (xy[0] ushr shift) * longitudeSize
+            cells[offset + GeoHash.MAX_LATITUDE] = cells[offset + GeoHash.MIN_LATITUDE] + latitudeSize
+            cells[offset + GeoHash.MAX_LONGITUDE] = cells[offset + GeoHash.MIN_LONGITUDE] + longitudeSize
+            count++
+            index += 1L shl (2 * shift)
+        }
+        return cells.copyOf(4 * count)
+    }
+
+    override val maxCellLevel: Int
+        get() = order
+
+    override fun queryForCell(level: Int, column: Long, row: Long): GeoHashQuery {
+        if (level < 1 || level > order)
+            throw IllegalArgumentException("The level of a cell must be between 1 and $order!")
+        val shift = order - level
+        val start = (xyToIndex(order, column shl shift, row shl shift) ushr (2 * shift)) shl (2 * shift)
+        return GeoHashQuery.queryForRange(start, start + (1L shl (2 * shift)), 2 * order)
+    }
+
+    override fun toString() = "HilbertKeyScheme(order=$order, maxRanges=$maxRanges)"
+}
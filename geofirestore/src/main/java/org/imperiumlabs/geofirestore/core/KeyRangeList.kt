@@ -0,0 +1,121 @@
+package org.imperiumlabs.geofirestore.core
+
+import java.util.Arrays
+import java.util.LinkedHashSet
+
+/*
+ * A growable list of key ranges [start, end) over keys made of bitCount bits, right aligned,
+ * stored in primitive arrays. Used by the planners to collect, merge and cap a covering
+ * before converting it to GeoHashQuery objects.
+ */
+internal class KeyRangeList(val bitCount: Int) {
+
+    private var starts = LongArray(16)
+    private var ends = LongArray(16)
+
+    var size = 0
+        private set
+
+    fun start(index: Int) = starts[index]
+
+    fun end(index: Int) = ends[index]
+
+    fun add(start: Long, end: Long) {
+        if (size == starts.size) {
+            starts = starts.copyOf(size * 2)
+            ends = ends.copyOf(size * 2)
+        }
+        starts[size] = start
+        ends[size] = end
+        size++
+    }
+
+    /*
+     * Sort the ranges and merge the overlapping or adjacent ones. The union of the ranges only
+     * depends on the sorted starts and the sorted ends, so they are sorted independently and
+     * swept once counting how many ranges are open.
+     */
+    fun sortAndMerge() {
+        if (size < 2) return
+        Arrays.sort(starts, 0, size)
+        Arrays.sort(ends, 0, size)
+        var merged = 0
+        var open = 0
+        var mergedStart = 0L
+        var i = 0
+        var j = 0
+        while (i < size) {
+            if (starts[i] <= ends[j]) {
+                if (open == 0) mergedStart = starts[i]
+                open++
+                i++
+            } else {
+                open--
+                if (open == 0) {
+                    val mergedEnd = ends[j]
+                    starts[merged] = mergedStart
+                    ends[merged] = mergedEnd
+                    merged++
+                }
+                j++
+            }
+        }
+        // Every start was consumed, the last end closes the last open range
+        starts[merged] = mergedStart
+        ends[merged] = ends[size - 1]
+        size = merged + 1
+    }
+
+    /*
+     * Close the smallest gaps between sorted, merged ranges until at most maxRanges remain
+     */
+    fun capTo(maxRanges: Int) {
+        if (maxRanges < 1 || size <= maxRanges) return
+        val gaps = LongArray(size - 1)
+        for (i in 0 until size - 1)
+            gaps[i] = starts[i + 1] - ends[i]
+        val sortedGaps = gaps.copyOf()
+        Arrays.sort(sortedGaps)
+        val toClose = size - maxRanges
+        val threshold = sortedGaps[toClose - 1]
+        // Gaps equal to the threshold are closed only until the budget is used
+        var closeAtThreshold = toClose
+        for (gap in sortedGaps) {
+            if (gap < threshold) closeAtThreshold-- else break
+        }
+        val close = BooleanArray(size - 1)
+        for (i in 0 until size - 1) {
+            val gap = gaps[i]
+            close[i] = gap < threshold || (gap == threshold && closeAtThreshold-- > 0)
+        }
+        closeGaps(close)
+    }
+
+    /*
+     * Merge the sorted, merged ranges i and i + 1 for every close[i] set, so the gap between them is read too
+     */
+    fun closeGaps(close: BooleanArray) {
+        if (size < 2) return
+        var kept = 0
+        for (i in 1 until size) {
+            if (close[i - 1]) {
+                ends[kept] = ends[i]
+            } else {
+                kept++
+                starts[kept] = starts[i]
+                ends[kept] = ends[i]
+            }
+        }
+        size = kept + 1
+    }
+
+    /*
+     * Convert the ranges to queries, in key order
+     */
+    fun toQueries(): Set<GeoHashQuery> {
+        val queries = LinkedHashSet<GeoHashQuery>()
+        for (i in 0 until size)
+            queries.add(GeoHashQuery.queryForRange(starts[i], ends[i], bitCount))
+        return queries
+    }
+}
@@ -0,0 +1,133 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.util.Constants
+import org.imperiumlabs.geofirestore.util.GeoUtils
+import java.util.ArrayList
+import java.util.Collections
+
+/**
+ * The covering a SpatialKeyScheme plans for a circle, with the estimates needed to tune
+ * radius and precision choices: the area read against the area of the circle and the number
+ * of listeners a live query opens. Building a plan has no side effect on any query.
+ */
+class QueryPlan internal constructor(
+        keyScheme: SpatialKeyScheme,
+        // The center of the circle
+        val center: GeoLocation,
+        // The radius of the circle, in meters
+        val radius: Double,
+        listenersPerQuery: Int) {
+
+    companion object {
+        // The number of vertices of the circle in the GeoJSON rendering
+        private const val CIRCLE_VERTICES = 64
+    }
+
+    /**
+     * The ranges to query, in key order.
+     */
+    val queries: List<GeoHashQuery>
+
+    /**
+     * The number of snapshot listeners a GeoQuery opens for this plan.
+     */
+    val listenerCount: Int
+
+    /**
+     * The area of the cells read by the ranges, in square meters.
+     */
+    val coveredArea: Double
+
+    /**
+     * The area of the circle, in square meters.
+     */
+    val circleArea: Double = GeoUtils.circleArea(radius)
+
+    // The cells of every query, 4 values per cell
+    private val cells: List<DoubleArray>
+
+    init {
+        val sorted = ArrayList(keyScheme.queriesAtLocation(center, radius))
+        Collections.sort(sorted)
+        queries = Collections.unmodifiableList(sorted)
+        listenerCount = queries.size * listenersPerQuery
+        cells = queries.map { keyScheme.cellsOf(it) }
+        var area = 0.0
+        for (queryCells in cells)
+            for (offset in 0 until queryCells.size step 4)
+                area += GeoUtils.boundingBoxArea(queryCells[offset + GeoHash.MIN_LATITUDE], queryCells[offset + GeoHash.MIN_LONGITUDE],
+                        queryCells[offset + GeoHash.MAX_LATITUDE], queryCells[offset + GeoHash.MAX_LONGITUDE])
+        coveredArea = area
+    }
+
+    /**
+     * The ratio between the area read and the area of the circle, the share of the documents
+     * read for nothing being about 1 - 1 / overReadRatio for evenly spread documents.
+     */
+    val overReadRatio: Double
+        get() = if (circleArea > 0) coveredArea / circleArea else Double.POSITIVE_INFINITY
+
+    /**
+     * Render the plan as a GeoJSON FeatureCollection: a Polygon approximating the circle and a
+     * MultiPolygon with the cells of every query, whose startValue and endValue are in its properties.
+     *
+     * @return The GeoJSON document
+     */
+    fun toGeoJson(): String {
+        val json = StringBuilder()
+        json.append("{\"type\":\"FeatureCollection\",\"features\":[")
+        json.append("{\"type\":\"Feature\",\"properties\":{\"kind\":\"circle\",\"radius\":").append(radius)
+        json.append("},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[")
+        appendCircle(json)
+        json.append("]]}}")
+        for (i in queries.indices) {
+            json.append(",{\"type\":\"Feature\",\"properties\":{\"kind\":\"range\",\"startValue\":\"")
+                    .append(queries[i].startValue).append("\",\"endValue\":\"").append(queries[i].endValue)
+            json.append("\"},\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":[")
+            val queryCells = cells[i]
+            for (offset in 0 until queryCells.size step 4) {
+                if (offset > 0) json.append(',')
+                val minLatitude = queryCells[offset + GeoHash.MIN_LATITUDE]
+                val minLongitude = queryCells[offset + GeoHash.MIN_LONGITUDE]
+                val maxLatitude = queryCells[offset + GeoHash.MAX_LATITUDE]
+                val maxLongitude = queryCells[offset + GeoHash.MAX_LONGITUDE]
+                json.append("[[")
+                appendPosition(json, minLongitude, minLatitude).append(',')
+                appendPosition(json, maxLongitude, minLatitude).append(',')
+                appendPosition(json, maxLongitude, maxLatitude).append(',')
+                appendPosition(json, minLongitude, maxLatitude).append(',')
+                appendPosition(json, minLongitude, minLatitude)
+                json.append("]]")
+            }
+            json.append("]}}")
+        }
+        json.append("]}")
+        return json.toString()
+    }
+
+    /*
+     * Append the closed ring of the points at radius from the center, going counterclockwise
+     */
+    private fun appendCircle(json: StringBuilder) {
+        val earthRadius = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS) / 2
+        val angle = radius / earthRadius
+        val latitude = Math.toRadians(center.latitude)
+        val longitude = Math.toRadians(center.longitude)
+        for (i in 0..CIRCLE_VERTICES) {
+            if (i > 0) json.append(',')
+            val bearing = -2 * Math.PI * (i % CIRCLE_VERTICES) / CIRCLE_VERTICES
+            val pointLatitude = Math.asin(Math.sin(latitude) * Math.cos(angle) +
+                    Math.cos(latitude) * Math.sin(angle) * Math.cos(bearing))
+            val pointLongitude = longitude + Math.atan2(Math.sin(bearing) * Math.sin(angle) * Math.cos(latitude),
+                    Math.cos(angle) - Math.sin(latitude) * Math.sin(pointLatitude))
+            appendPosition(json, GeoUtils.wrapLongitude(Math.toDegrees(pointLongitude)), Math.toDegrees(pointLatitude))
+        }
+    }
+
+    private fun appendPosition(json: StringBuilder, longitude: Double, latitude: Double) =
+            json.append('[').append(longitude).append(',').append(latitude).append(']')
+
+    override fun toString() = "QueryPlan(center=$center, radius=$radius, queries=${queries.size}, " +
+            "listenerCount=$listenerCount, overReadRatio=$overReadRatio)"
+}
@@ -0,0 +1,74 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.region.GeoRegion
+
+/**
+ * A SpatialKeyScheme maps locations to the string keys stored in the "g" field of the documents
+ * and plans the key ranges that cover a query area.
+ *
+ * Keys are handled in the packed form used by GeoHash: Base32 digits left aligned in a Long
+ * with the number of digits in the low bits, so the same GeoHashQuery ranges and string
+ * comparisons work for every scheme. A collection must be written and queried with the same scheme.
+ */
+interface SpatialKeyScheme {
+
+    /**
+     * Encode a location into the packed form of its key.
+     *
+     * @param latitude The latitude in the range [-90, 90]
+     * @param longitude The longitude in the range [-180, 180]
+     * @return The packed key
+     */
+    fun encode(latitude: Double, longitude: Double): Long
+
+    /**
+     * Plan the key ranges covering a circle.
+     *
+     * @param location The center of the circle
+     * @param radius The radius of the circle, in meters
+     * @return The ranges to query
+     */
+    fun queriesAtLocation(location: GeoLocation, radius: Double): Set<GeoHashQuery>
+
+    /**
+     * Plan the key ranges covering a region.
+     *
+     * @param region The region to cover
+     * @return The ranges to query
+     */
+    fun queriesForRegion(region: GeoRegion): Set<GeoHashQuery>
+
+    /**
+     * Decode the cells whose keys are inside a range.
+     *
+     * @param query A range planned by this scheme
+     * @return The boxes of the cells, 4 values per cell at the GeoHash.MIN_LATITUDE, MIN_LONGITUDE,
+     *         MAX_LATITUDE and MAX_LONGITUDE offsets
+     */
+    fun cellsOf(query: GeoHashQuery): DoubleArray
+
+    /**
+     * The finest level of the cells of queryForCell, where keys can still tell the cells apart.
+     */
+    val maxCellLevel: Int
+
+    /**
+     * Plan the key range of a cell of the grid splitting latitudes and longitudes into 2^level
+     * rows and columns. The grid is the same for every scheme, and the cells of a level are
+     * exactly the four children of the cells of the previous level.
+     *
+     * @param level The level of the grid, in the range [1, maxCellLevel]
+     * @param column The column of the cell, from the antimeridian eastwards
+     * @param row The row of the cell, from the south pole northwards
+     * @return The range of the keys of the locations inside the cell
+     */
+    fun queryForCell(level: Int, column: Long, row: Long): GeoHashQuery
+
+    /**
+     * @param latitude The latitude in the range [-90, 90]
+     * @param longitude The longitude in the range [-180, 180]
+     * @return The key stored in Firestore for a location
+     */
+    fun keyFor(latitude: Double, longitude: Double) = GeoHash.toBase32(encode(latitude, longitude))
+}
@@ -0,0 +1,78 @@
+package org.imperiumlabs.geofirestore.core
+
+/*
+ * Exact decomposition of a box of geohash cells into ranges of consecutive Z-order values,
+ * following Tropf and Herzog: a Z-order range [zMin, zMax] spanned by a box contains only
+ * cells of the box when its length equals the area of the box, otherwise the box is split
+ * where zMin and zMax first differ and the search continues below LITMAX (the largest value
+ * of the lower half) and from BIGMIN (the smallest value of the upper half), jumping over the
+ * values outside the box.
+ */
+internal object ZOrderRanges {
+
+    /*
+     * Add the ranges of the cells with row in [minRow, maxRow] and column in [minColumn, maxColumn],
+     * cells being made of bitCount interleaved bits, in Z-order
+     */
+    fun addBox(minRow: Long, maxRow: Long, minColumn: Long, maxColumn: Long, bitCount: Int, ranges: KeyRangeList) {
+        val zMin = GeoHash.interleaveIndices(minRow, minColumn, bitCount)
+        val zMax = GeoHash.interleaveIndices(maxRow, maxColumn, bitCount)
+        addBox(zMin, zMax, minRow, maxRow, minColumn, maxColumn, bitCount, ranges)
+    }
+
+    /*
+     * Split the range [start, end) of keys made of bitCount bits into its largest aligned blocks,
+     * each of them a cell of a coarser level, calling action with the bits of the cell and their count
+     */
+    inline fun forEachCell(start: Long, end: Long, bitCount: Int, action: (Long, Int) -> Unit) {
+        var key = start
+        while (key < end) {
+            // The largest aligned block starting at key and ending before end
+            var level = if (key == 0L) bitCount else java.lang.Long.numberOfTrailingZeros(key)
+            while ((1L shl level) > end - key) level--
+            action(key ushr level, bitCount - level)
+            key += 1L shl level
+        }
+    }
+
+    private fun addBox(zMin: Long, zMax: Long, minRow: Long, maxRow: Long, minColumn: Long, maxColumn: Long,
+                       bitCount: Int, ranges: KeyRangeList) {
+        val area = (maxRow - minRow + 1) * (maxColumn - minColumn + 1)
+        if (zMax - zMin + 1 == area) {
+            ranges.add(zMin, zMax + 1)
+            return
+        }
+        // The most significant bit where zMin and zMax differ is 0 in zMin and 1 in zMax,
+        // it splits the box on its axis at the value with that bit set and the lower bits cleared
+        val position = java.lang.Long.SIZE - 1 - java.lang.Long.numberOfLeadingZeros(zMin xor zMax)
+        val axisBit = position / 2
+        if (isLongitudeBit(position, bitCount)) {
+            val split = (maxColumn ushr axisBit) shl axisBit
+            addBox(zMin, litMax(maxRow, split, bitCount, true), minRow, maxRow, minColumn, split - 1, bitCount, ranges)
+            addBox(bigMin(minRow, split, bitCount), zMax, minRow, maxRow, split, maxColumn, bitCount, ranges)
+        } else {
+            val split = (maxRow ushr axisBit) shl axisBit
+            addBox(zMin, litMax(split, maxColumn, bitCount, false), minRow, split - 1, minColumn, maxColumn, bitCount, ranges)
+            addBox(bigMin(split, minColumn, bitCount), zMax, split, maxRow, minColumn, maxColumn, bitCount, ranges)
+        }
+    }
+
+    /*
+     * LITMAX: the largest Z-order value of the box below a split; row and column are the
+     * upper corner of the box with the split axis set to the split value
+     */
+    private fun litMax(row: Long, column: Long, bitCount: Int, splitOnLongitude: Boolean) =
+            if (splitOnLongitude) GeoHash.interleaveIndices(row, column - 1, bitCount)
+            else GeoHash.interleaveIndices(row - 1, column, bitCount)
+
+    /*
+     * BIGMIN: the smallest Z-order value of the box above a split; row and column are the
+     * lower corner of the box with the split axis set to the split value
+     */
+    private fun bigMin(row: Long, column: Long, bitCount: Int) = GeoHash.interleaveIndices(row, column, bitCount)
+
+    /*
+     * Longitude takes the most significant of bitCount interleaved bits and every other bit after it
+     */
+    private fun isLongitudeBit(position: Int, bitCount: Int) = (bitCount - 1 - position) % 2 == 0
+}
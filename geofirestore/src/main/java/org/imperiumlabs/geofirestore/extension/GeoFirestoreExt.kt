@@ -3,6 +3,7 @@ package org.imperiumlabs.geofirestore.extension
 import com.google.firebase.firestore.DocumentSnapshot
 import com.google.firebase.firestore.GeoPoint
 import org.imperiumlabs.geofirestore.GeoFirestore
+import org.imperiumlabs.geofirestore.region.GeoRegion
 
 /*
  * This file contains a series of extension functions
@@ -69,4 +70,106 @@ fun GeoFirestore.getAtLocation(center: GeoPoint, radius: Double, callback: (p0:
             callback(documentSnapshots, exception)
         }
     })
-}
\ No newline at end of file
+}
+
+/**
+ * Gets the documents inside the given region.
+ *
+ * @param region The region of the query
+ * @param callback The Lambda function called with the documents inside the region or an error
+ */
+fun GeoFirestore.getInRegion(region: GeoRegion, callback: (p0: List<DocumentSnapshot>?, p1: Exception?)->Unit) {
+    this.getInRegion(region, object : GeoFirestore.SingleGeoQueryDataEventCallback {
+        override fun onComplete(documentSnapshots: List<DocumentSnapshot>?, exception: Exception?) {
+            callback(documentSnapshots, exception)
+        }
+    })
+}
+
+/**
+ * Gets the documents inside the bounding box between two corners.
+ *
+ * @param southWest The south-west corner of the box
+ * @param northEast The north-east corner of the box
+ * @param callback The Lambda function called with the documents inside the box or an error
+ */
+fun GeoFirestore.getInBoundingBox(southWest: GeoPoint, northEast: GeoPoint, callback: (p0: List<DocumentSnapshot>?, p1: Exception?)->Unit) {
+    this.getInBoundingBox(southWest, northEast, object : GeoFirestore.SingleGeoQueryDataEventCallback {
+        override fun onComplete(documentSnapshots: List<DocumentSnapshot>?, exception: Exception?) {
+            callback(documentSnapshots, exception)
+        }
+    })
+}
+
+/**
+ * Gets the documents inside the polygon with the given vertices.
+ *
+ * @param vertices The vertices of the polygon, it must not cross the antimeridian
+ * @param callback The Lambda function called with the documents inside the polygon or an error
+ */
+fun GeoFirestore.getInPolygon(vertices: List<GeoPoint>, callback: (p0: List<DocumentSnapshot>?, p1: Exception?)->Unit) {
+    this.getInPolygon(vertices, object : GeoFirestore.SingleGeoQueryDataEventCallback {
+        override fun onComplete(documentSnapshots: List<DocumentSnapshot>?, exception: Exception?) {
+            callback(documentSnapshots, exception)
+        }
+    })
+}
+
+/**
+ * Gets the documents within the buffer distance of a route.
+ *
+ * @param route The points of the route, joined by great circle segments
+ * @param buffer The distance from the route, in kilometers
+ * @param callback The Lambda function called with the documents along the route or an error
+ */
+fun GeoFirestore.getAlongRoute(route: List<GeoPoint>, buffer: Double, callback: (p0: List<DocumentSnapshot>?, p1: Exception?)->Unit) {
+    this.getAlongRoute(route, buffer, object : GeoFirestore.SingleGeoQueryDataEventCallback {
+        override fun onComplete(documentSnapshots: List<DocumentSnapshot>?, exception: Exception?) {
+            callback(documentSnapshots, exception)
+        }
+    })
+}
+
+/**
+ * Gets the documents between two distances of a center.
+ *
+ * @param center The center of the query
+ * @param minRadius The inner radius of the query, in kilometers
+ * @param maxRadius The outer radius of the query, in kilometers
+ * @param callback The Lambda function called with the documents between the two radii or an error
+ */
+fun GeoFirestore.getInAnnulus(center: GeoPoint, minRadius: Double, maxRadius: Double, callback: (p0: List<DocumentSnapshot>?, p1: Exception?)->Unit) {
+    this.getInAnnulus(center, minRadius, maxRadius, object : GeoFirestore.SingleGeoQueryDataEventCallback {
+        override fun onComplete(documentSnapshots: List<DocumentSnapshot>?, exception: Exception?) {
+            callback(documentSnapshots, exception)
+        }
+    })
+}
+
+/**
+ * Gets the k documents nearest to a center, sorted by increasing distance, first reading
+ * cells of DEFAULT_NEAREST_CELL_SIZE kilometers.
+ *
+ * @param center The center of the search
+ * @param k The number of documents to get
+ * @param callback The Lambda function called with the k nearest documents or an error
+ */
+fun GeoFirestore.getNearest(center: GeoPoint, k: Int, callback: (p0: List<DocumentSnapshot>?, p1: Exception?)->Unit) =
+        this.getNearest(center, k, GeoFirestore.DEFAULT_NEAREST_CELL_SIZE, callback)
+
+/**
+ * Gets the k documents nearest to a center, sorted by increasing distance.
+ *
+ * @param center The center of the search
+ * @param k The number of documents to get
+ * @param cellSize The size of the first cells read, in kilometers
+ * @param callback The Lambda function called with the k nearest documents or an error
+ */
+fun GeoFirestore.getNearest(center: GeoPoint, k: Int, cellSize: Double,
+                            callback: (p0: List<DocumentSnapshot>?, p1: Exception?)->Unit) {
+    this.getNearest(center, k, object : GeoFirestore.SingleGeoQueryDataEventCallback {
+        override fun onComplete(documentSnapshots: List<DocumentSnapshot>?, exception: Exception?) {
+            callback(documentSnapshots, exception)
+        }
+    }, cellSize)
+}
@@ -0,0 +1,21 @@
+package org.imperiumlabs.geofirestore.listeners
+
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.GeoPoint
+
+/**
+ * GeoMultiCircleQuery notifies listeners with this interface about the circles each document is in,
+ * in addition to the events of GeoQueryDataEventListener about the union of the circles.
+ */
+interface GeoQueryCirclesEventListener : GeoQueryDataEventListener {
+
+    /**
+     * Called if the circles containing a document changed. This method is called for every document currently
+     * in the query at the time of adding the listener, and with no circles after a document exited the query.
+     *
+     * @param documentSnapshot The snapshot of the associated document
+     * @param location The location for this document
+     * @param circles The indices of the circles of the query containing the document, in increasing order
+     */
+    fun onDocumentCirclesChanged(documentSnapshot: DocumentSnapshot, location: GeoPoint, circles: List<Int>)
+}
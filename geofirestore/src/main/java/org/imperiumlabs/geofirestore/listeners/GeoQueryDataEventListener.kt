@@ -57,7 +57,8 @@ interface GeoQueryDataEventListener {
     /**
      * Called once all initial GeoFirestore data has been loaded and the relevant events have been fired for this query.
      * Every time the query criteria is updated, this observer will be called after the updated query has fired the
-     * appropriate document entered or document exited events.
+     * appropriate document entered or document exited events. Documents served from the local cache count as
+     * loaded, and the ranges that failed are not waited for.
      */
     fun onGeoQueryReady()
 
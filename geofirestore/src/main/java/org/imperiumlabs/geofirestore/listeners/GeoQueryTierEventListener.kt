@@ -0,0 +1,22 @@
+package org.imperiumlabs.geofirestore.listeners
+
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.GeoPoint
+
+/**
+ * GeoTieredQuery notifies listeners with this interface about the tier each document is in,
+ * in addition to the events of GeoQueryDataEventListener about the outermost tier.
+ */
+interface GeoQueryTierEventListener : GeoQueryDataEventListener {
+
+    /**
+     * Called if a document moved to another tier. This method is called for every document currently
+     * in the query at the time of adding the listener, and with no tier after a document exited the query.
+     *
+     * @param documentSnapshot The snapshot of the associated document
+     * @param location The location for this document
+     * @param fromTier The index of the previous tier of the document, 0 for the innermost one, -1 if it wasn't in the query
+     * @param toTier The index of the current tier of the document, 0 for the innermost one, -1 if it isn't in the query anymore
+     */
+    fun onDocumentTierChanged(documentSnapshot: DocumentSnapshot, location: GeoPoint, fromTier: Int, toTier: Int)
+}
@@ -0,0 +1,65 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.util.GeoUtils
+
+/**
+ * The locations whose distance to a center is between a minimal and a maximal radius.
+ *
+ * Cells entirely inside the inner circle are disjoint from the annulus, so the ranges covering
+ * them are not read at all.
+ */
+class GeoAnnulus(
+        // The center of the annulus
+        val center: GeoLocation,
+        // The radius of the inner circle, in meters
+        val minRadius: Double,
+        // The radius of the outer circle, in meters
+        val maxRadius: Double) : GeoRegion {
+
+    private val outer: GeoCircle
+
+    init {
+        if (minRadius < 0 || minRadius > maxRadius)
+            throw IllegalArgumentException("The radii of an annulus must satisfy 0 <= minRadius <= maxRadius!")
+        outer = GeoCircle(center, maxRadius)
+    }
+
+    override val minLatitude: Double
+        get() = outer.minLatitude
+    override val minLongitude: Double
+        get() = outer.minLongitude
+    override val maxLatitude: Double
+        get() = outer.maxLatitude
+    override val maxLongitude: Double
+        get() = outer.maxLongitude
+
+    override fun contains(latitude: Double, longitude: Double): Boolean {
+        val distance = GeoUtils.distance(center.latitude, center.longitude, latitude, longitude)
+        return distance >= minRadius && distance <= maxRadius
+    }
+
+    override fun relate(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double): GeoRegion.Relation {
+        val minDistance = GeoUtils.distanceToBoundingBox(center.latitude, center.longitude,
+                minLatitude, minLongitude, maxLatitude, maxLongitude)
+        if (minDistance > maxRadius)
+            return GeoRegion.Relation.DISJOINT
+        val maxDistance = GeoUtils.maxDistanceToBoundingBox(center.latitude, center.longitude,
+                minLatitude, minLongitude, maxLatitude, maxLongitude)
+        return when {
+            // The cell is entirely inside the inner circle
+            maxDistance < minRadius -> GeoRegion.Relation.DISJOINT
+            minDistance >= minRadius && maxDistance <= maxRadius -> GeoRegion.Relation.INSIDE
+            else -> GeoRegion.Relation.INTERSECTS
+        }
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (other == null || other !is GeoAnnulus) return false
+        return center == other.center && minRadius == other.minRadius && maxRadius == other.maxRadius
+    }
+
+    override fun hashCode() = 31 * (31 * center.hashCode() + minRadius.hashCode()) + maxRadius.hashCode()
+
+    override fun toString() = "GeoAnnulus($center, $minRadius, $maxRadius)"
+}
@@ -0,0 +1,83 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import java.util.Locale.US
+
+/**
+ * A latitude/longitude rectangle, such as the viewport of a map.
+ *
+ * A box whose minLongitude is greater than its maxLongitude crosses the antimeridian:
+ * it spans from minLongitude east to 180 and from -180 east to maxLongitude.
+ */
+class GeoBoundingBox(
+        override val minLatitude: Double,
+        override val minLongitude: Double,
+        override val maxLatitude: Double,
+        override val maxLongitude: Double) : GeoRegion {
+
+    /**
+     * Creates the box between a south-west and a north-east corner.
+     */
+    constructor(southWest: GeoLocation, northEast: GeoLocation) :
+            this(southWest.latitude, southWest.longitude, northEast.latitude, northEast.longitude)
+
+    init {
+        if (!GeoLocation.coordinatesValid(minLatitude, minLongitude) || !GeoLocation.coordinatesValid(maxLatitude, maxLongitude))
+            throw IllegalArgumentException(String.format(US, "Not valid bounding box coordinates: [%f, %f, %f, %f]",
+                    minLatitude, minLongitude, maxLatitude, maxLongitude))
+        if (minLatitude > maxLatitude)
+            throw IllegalArgumentException("The southern edge of a bounding box can't be north of its northern edge!")
+    }
+
+    /**
+     * @return True if the box crosses the antimeridian
+     */
+    fun crossesAntimeridian() = minLongitude > maxLongitude
+
+    override fun contains(latitude: Double, longitude: Double) =
+            latitude >= minLatitude && latitude <= maxLatitude && containsLongitude(longitude)
+
+    override fun relate(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double): GeoRegion.Relation {
+        if (minLatitude > this.maxLatitude || maxLatitude < this.minLatitude)
+            return GeoRegion.Relation.DISJOINT
+        val latitudeInside = minLatitude >= this.minLatitude && maxLatitude <= this.maxLatitude
+        // A box crossing the antimeridian is made of a western and an eastern part, a cell can only overlap one of them
+        val longitudeRelation = if (crossesAntimeridian())
+            maxOf(relateLongitudes(minLongitude, maxLongitude, this.minLongitude, 180.0),
+                    relateLongitudes(minLongitude, maxLongitude, -180.0, this.maxLongitude))
+        else
+            relateLongitudes(minLongitude, maxLongitude, this.minLongitude, this.maxLongitude)
+        return when {
+            longitudeRelation == GeoRegion.Relation.DISJOINT -> GeoRegion.Relation.DISJOINT
+            longitudeRelation == GeoRegion.Relation.INSIDE && latitudeInside -> GeoRegion.Relation.INSIDE
+            else -> GeoRegion.Relation.INTERSECTS
+        }
+    }
+
+    private fun containsLongitude(longitude: Double) =
+            if (crossesAntimeridian()) longitude >= minLongitude || longitude <= maxLongitude
+            else longitude >= minLongitude && longitude <= maxLongitude
+
+    private fun relateLongitudes(minLongitude: Double, maxLongitude: Double, west: Double, east: Double) =
+            when {
+                minLongitude > east || maxLongitude < west -> GeoRegion.Relation.DISJOINT
+                minLongitude >= west && maxLongitude <= east -> GeoRegion.Relation.INSIDE
+                else -> GeoRegion.Relation.INTERSECTS
+            }
+
+    override fun equals(other: Any?): Boolean {
+        if (other == null || other !is GeoBoundingBox) return false
+        return minLatitude == other.minLatitude && minLongitude == other.minLongitude &&
+                maxLatitude == other.maxLatitude && maxLongitude == other.maxLongitude
+    }
+
+    override fun hashCode(): Int {
+        var result = minLatitude.hashCode()
+        result = 31 * result + minLongitude.hashCode()
+        result = 31 * result + maxLatitude.hashCode()
+        result = 31 * result + maxLongitude.hashCode()
+        return result
+    }
+
+    override fun toString() = "GeoBoundingBox($minLatitude, $minLongitude, $maxLatitude, $maxLongitude)"
+}
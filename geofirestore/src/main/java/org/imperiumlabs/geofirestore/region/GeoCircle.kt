@@ -0,0 +1,68 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.util.Constants
+import org.imperiumlabs.geofirestore.util.GeoUtils
+
+/**
+ * The locations within a distance of a center.
+ */
+class GeoCircle(
+        // The center of the circle
+        val center: GeoLocation,
+        // The radius of the circle, in meters
+        val radius: Double) : GeoRegion {
+
+    override val minLatitude: Double
+    override val minLongitude: Double
+    override val maxLatitude: Double
+    override val maxLongitude: Double
+
+    init {
+        if (radius < 0)
+            throw IllegalArgumentException("The radius of a circle can't be negative!")
+        val latitudeDegrees = radius / Constants.METERS_PER_DEGREE_LATITUDE
+        maxLatitude = Math.min(90.0, center.latitude + latitudeDegrees)
+        minLatitude = Math.max(-90.0, center.latitude - latitudeDegrees)
+        val longitudeDelta = Math.max(
+                GeoUtils.distanceToLongitudeDegrees(radius, maxLatitude),
+                GeoUtils.distanceToLongitudeDegrees(radius, minLatitude))
+        if (longitudeDelta >= 180) {
+            minLongitude = -180.0
+            maxLongitude = 180.0
+        } else {
+            minLongitude = GeoUtils.wrapLongitude(center.longitude - longitudeDelta)
+            maxLongitude = GeoUtils.wrapLongitude(center.longitude + longitudeDelta)
+        }
+    }
+
+    override fun contains(latitude: Double, longitude: Double) =
+            GeoUtils.distance(center.latitude, center.longitude, latitude, longitude) <= radius
+
+    override fun relate(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double) =
+            when {
+                GeoUtils.distanceToBoundingBox(center.latitude, center.longitude,
+                        minLatitude, minLongitude, maxLatitude, maxLongitude) > radius -> GeoRegion.Relation.DISJOINT
+                GeoUtils.maxDistanceToBoundingBox(center.latitude, center.longitude,
+                        minLatitude, minLongitude, maxLatitude, maxLongitude) <= radius -> GeoRegion.Relation.INSIDE
+                else -> GeoRegion.Relation.INTERSECTS
+            }
+
+    companion object {
+        /**
+         * Returns a circle whose radius is given in kilometers, like the radius of GeoFirestore.queryAtLocation.
+         * The maximum radius that is supported is about 8587km. If a radius bigger than this is passed we'll cap it.
+         */
+        fun ofKilometers(center: GeoLocation, radius: Double) =
+                GeoCircle(center, GeoUtils.capRadius(radius) * Constants.KILOMETER_TO_METER)
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (other == null || other !is GeoCircle) return false
+        return center == other.center && radius == other.radius
+    }
+
+    override fun hashCode() = 31 * center.hashCode() + radius.hashCode()
+
+    override fun toString() = "GeoCircle($center, $radius)"
+}
@@ -0,0 +1,115 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.util.Constants
+import org.imperiumlabs.geofirestore.util.GeoUtils
+
+/**
+ * The locations within a buffer distance of a route, a polyline whose segments are great circle arcs.
+ *
+ * The whole corridor is covered at once, so the ranges shared by consecutive segments are read
+ * only once, and documents are matched by their distance to the nearest segment.
+ */
+class GeoCorridor(
+        route: List<GeoLocation>,
+        // The buffer distance around the route, in meters
+        val buffer: Double) : GeoRegion {
+
+    private val latitudes = DoubleArray(route.size) { route[it].latitude }
+    private val longitudes = DoubleArray(route.size) { route[it].longitude }
+
+    override val minLatitude: Double
+    override val minLongitude: Double
+    override val maxLatitude: Double
+    override val maxLongitude: Double
+
+    init {
+        if (route.isEmpty())
+            throw IllegalArgumentException("A route needs at least one point!")
+        if (buffer < 0)
+            throw IllegalArgumentException("The buffer of a corridor can't be negative!")
+
+        val meanRadius = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS) / 2
+        var south = latitudes[0]
+        var north = latitudes[0]
+        // Longitudes are unwrapped along the route so a route crossing the antimeridian stays continuous
+        var longitude = longitudes[0]
+        var west = longitude
+        var east = longitude
+        for (i in 1 until latitudes.size) {
+            // Every point of a segment is within half its length of one of its ends
+            val halfLength = Math.toDegrees(GeoUtils.distance(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]) / meanRadius) / 2
+            south = Math.min(south, Math.min(latitudes[i - 1], latitudes[i]) - halfLength)
+            north = Math.max(north, Math.max(latitudes[i - 1], latitudes[i]) + halfLength)
+            longitude += (longitudes[i] - longitudes[i - 1]).let { if (it > 180) it - 360 else if (it < -180) it + 360 else it }
+            west = Math.min(west, longitude)
+            east = Math.max(east, longitude)
+        }
+        val latitudeDegrees = GeoUtils.distanceToLatitudeDegrees(buffer)
+        minLatitude = Math.max(-90.0, south - latitudeDegrees)
+        maxLatitude = Math.min(90.0, north + latitudeDegrees)
+        val longitudeDelta = Math.max(
+                GeoUtils.distanceToLongitudeDegrees(buffer, minLatitude),
+                GeoUtils.distanceToLongitudeDegrees(buffer, maxLatitude))
+        // A segment passing over a pole crosses every meridian
+        if (minLatitude <= -90 || maxLatitude >= 90 || east - west + 2 * longitudeDelta >= 360) {
+            minLongitude = -180.0
+            maxLongitude = 180.0
+        } else {
+            minLongitude = GeoUtils.wrapLongitude(west - longitudeDelta)
+            maxLongitude = GeoUtils.wrapLongitude(east + longitudeDelta)
+        }
+    }
+
+    /**
+     * @return The number of points of the route
+     */
+    val size: Int
+        get() = latitudes.size
+
+    /**
+     * @param index The index of a point of the route
+     * @return The point at index
+     */
+    fun point(index: Int) = GeoLocation(latitudes[index], longitudes[index])
+
+    /**
+     * @param latitude The latitude in the range [-90, 90]
+     * @param longitude The longitude in the range [-180, 180]
+     * @return The distance in meters from the location to the route
+     */
+    fun distanceToRoute(latitude: Double, longitude: Double): Double {
+        if (latitudes.size == 1)
+            return GeoUtils.distance(latitudes[0], longitudes[0], latitude, longitude)
+        var distance = Double.MAX_VALUE
+        for (i in 1 until latitudes.size)
+            distance = Math.min(distance, GeoUtils.distanceToSegment(latitude, longitude,
+                    latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]))
+        return distance
+    }
+
+    override fun contains(latitude: Double, longitude: Double) = distanceToRoute(latitude, longitude) <= buffer
+
+    override fun relate(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double): GeoRegion.Relation {
+        // Every point of the cell is within halfDiagonal of its center
+        val centerLatitude = (minLatitude + maxLatitude) / 2
+        val centerLongitude = (minLongitude + maxLongitude) / 2
+        val halfDiagonal = GeoUtils.maxDistanceToBoundingBox(centerLatitude, centerLongitude,
+                minLatitude, minLongitude, maxLatitude, maxLongitude)
+        val distance = distanceToRoute(centerLatitude, centerLongitude)
+        return when {
+            distance - halfDiagonal > buffer -> GeoRegion.Relation.DISJOINT
+            distance + halfDiagonal <= buffer -> GeoRegion.Relation.INSIDE
+            else -> GeoRegion.Relation.INTERSECTS
+        }
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (other == null || other !is GeoCorridor) return false
+        return buffer == other.buffer && latitudes.contentEquals(other.latitudes) && longitudes.contentEquals(other.longitudes)
+    }
+
+    override fun hashCode() = 31 * (31 * latitudes.contentHashCode() + longitudes.contentHashCode()) + buffer.hashCode()
+
+    override fun toString() = "GeoCorridor(${(0 until size).joinToString { "[${latitudes[it]}, ${longitudes[it]}]" }}, $buffer)"
+}
@@ -0,0 +1,162 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.imperiumlabs.geofirestore.GeoLocation
+
+/**
+ * A simple polygon with straight edges in latitude/longitude coordinates, such as a delivery
+ * zone or a city district. The polygon must not cross the antimeridian nor contain a pole:
+ * an edge spanning more than 180 degrees of longitude is rejected with an IllegalArgumentException,
+ * like a vertex that isn't a valid location.
+ *
+ * Membership is decided by casting a ray towards the east and counting the edges it crosses.
+ * The edges are indexed by latitude bands, so only the few edges spanning the latitude of a
+ * location are tested instead of all of them.
+ */
+class GeoPolygon(vertices: List<GeoLocation>) : GeoRegion {
+
+    private val latitudes: DoubleArray
+    private val longitudes: DoubleArray
+
+    override val minLatitude: Double
+    override val minLongitude: Double
+    override val maxLatitude: Double
+    override val maxLongitude: Double
+
+    // Edge i goes from vertex i to vertex i + 1, bandEdges[bandStarts[b] until bandStarts[b + 1]] span band b
+    private val bandCount: Int
+    private val bandHeight: Double
+    private val bandStarts: IntArray
+    private val bandEdges: IntArray
+
+    init {
+        // A closing vertex equal to the first one is implied
+        val count = if (vertices.size > 1 && vertices.first() == vertices.last()) vertices.size - 1 else vertices.size
+        if (count < 3)
+            throw IllegalArgumentException("A polygon needs at least 3 vertices!")
+        latitudes = DoubleArray(count) { vertices[it].latitude }
+        longitudes = DoubleArray(count) { vertices[it].longitude }
+        for (i in 0 until count) {
+            if (!GeoLocation.coordinatesValid(latitudes[i], longitudes[i]))
+                throw IllegalArgumentException("Not a valid polygon vertex: ${latitudes[i]}, ${longitudes[i]}")
+            // An edge spanning more than half the earth is the short way around, across the antimeridian
+            val next = (i + 1) % count
+            if (Math.abs(longitudes[next] - longitudes[i]) > 180)
+                throw IllegalArgumentException("A polygon can't cross the antimeridian, split it into one polygon on each side!")
+        }
+        minLatitude = latitudes.min()!!
+        maxLatitude = latitudes.max()!!
+        minLongitude = longitudes.min()!!
+        maxLongitude = longitudes.max()!!
+
+        bandCount = count
+        bandHeight = (maxLatitude - minLatitude) / bandCount
+        bandStarts = IntArray(bandCount + 1)
+        for (edge in 0 until count) {
+            for (band in firstBandOf(edge)..lastBandOf(edge))
+                bandStarts[band + 1]++
+        }
+        for (band in 0 until bandCount)
+            bandStarts[band + 1] += bandStarts[band]
+        bandEdges = IntArray(bandStarts[bandCount])
+        val filled = bandStarts.copyOf(bandCount)
+        for (edge in 0 until count) {
+            for (band in firstBandOf(edge)..lastBandOf(edge))
+                bandEdges[filled[band]++] = edge
+        }
+    }
+
+    /**
+     * @return The number of vertices of the polygon
+     */
+    val size: Int
+        get() = latitudes.size
+
+    /**
+     * @param index The index of a vertex
+     * @return The vertex at index
+     */
+    fun vertex(index: Int) = GeoLocation(latitudes[index], longitudes[index])
+
+    override fun contains(latitude: Double, longitude: Double): Boolean {
+        if (latitude < minLatitude || latitude > maxLatitude || longitude < minLongitude || longitude > maxLongitude)
+            return false
+        val band = bandOf(latitude)
+        var inside = false
+        for (i in bandStarts[band] until bandStarts[band + 1]) {
+            val edge = bandEdges[i]
+            val next = if (edge + 1 == latitudes.size) 0 else edge + 1
+            // Half open on latitude so a ray through a vertex counts it once
+            if ((latitudes[edge] > latitude) != (latitudes[next] > latitude)) {
+                val crossing = longitudes[edge] + (latitude - latitudes[edge]) *
+                        (longitudes[next] - longitudes[edge]) / (latitudes[next] - latitudes[edge])
+                if (longitude < crossing) inside = !inside
+            }
+        }
+        return inside
+    }
+
+    override fun relate(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double): GeoRegion.Relation {
+        if (minLatitude > this.maxLatitude || maxLatitude < this.minLatitude ||
+                minLongitude > this.maxLongitude || maxLongitude < this.minLongitude)
+            return GeoRegion.Relation.DISJOINT
+        val firstBand = bandOf(Math.max(minLatitude, this.minLatitude))
+        val lastBand = bandOf(Math.min(maxLatitude, this.maxLatitude))
+        for (band in firstBand..lastBand) {
+            for (i in bandStarts[band] until bandStarts[band + 1]) {
+                if (edgeIntersects(bandEdges[i], minLatitude, minLongitude, maxLatitude, maxLongitude))
+                    return GeoRegion.Relation.INTERSECTS
+            }
+        }
+        // No edge reaches the cell, it's either entirely inside or entirely outside
+        return if (contains((minLatitude + maxLatitude) / 2, (minLongitude + maxLongitude) / 2))
+            GeoRegion.Relation.INSIDE
+        else
+            GeoRegion.Relation.DISJOINT
+    }
+
+    /*
+     * True if a part of an edge is inside a cell: their bounding boxes overlap and the line
+     * of the edge doesn't leave the four corners of the cell on the same side
+     */
+    private fun edgeIntersects(edge: Int, minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double): Boolean {
+        val next = if (edge + 1 == latitudes.size) 0 else edge + 1
+        val latitude = latitudes[edge]
+        val longitude = longitudes[edge]
+        val nextLatitude = latitudes[next]
+        val nextLongitude = longitudes[next]
+        if (Math.max(latitude, nextLatitude) < minLatitude || Math.min(latitude, nextLatitude) > maxLatitude ||
+                Math.max(longitude, nextLongitude) < minLongitude || Math.min(longitude, nextLongitude) > maxLongitude)
+            return false
+        val latitudeDelta = nextLatitude - latitude
+        val longitudeDelta = nextLongitude - longitude
+        val southWest = Math.signum(longitudeDelta * (minLatitude - latitude) - latitudeDelta * (minLongitude - longitude))
+        val southEast = Math.signum(longitudeDelta * (minLatitude - latitude) - latitudeDelta * (maxLongitude - longitude))
+        val northWest = Math.signum(longitudeDelta * (maxLatitude - latitude) - latitudeDelta * (minLongitude - longitude))
+        val northEast = Math.signum(longitudeDelta * (maxLatitude - latitude) - latitudeDelta * (maxLongitude - longitude))
+        return !(southWest == southEast && southEast == northWest && northWest == northEast && southWest != 0.0)
+    }
+
+    private fun bandOf(latitude: Double): Int {
+        if (bandHeight <= 0) return 0
+        return Math.max(0, Math.min(bandCount - 1, ((latitude - minLatitude) / bandHeight).toInt()))
+    }
+
+    private fun firstBandOf(edge: Int): Int {
+        val next = if (edge + 1 == latitudes.size) 0 else edge + 1
+        return bandOf(Math.min(latitudes[edge], latitudes[next]))
+    }
+
+    private fun lastBandOf(edge: Int): Int {
+        val next = if (edge + 1 == latitudes.size) 0 else edge + 1
+        return bandOf(Math.max(latitudes[edge], latitudes[next]))
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (other == null || other !is GeoPolygon) return false
+        return latitudes.contentEquals(other.latitudes) && longitudes.contentEquals(other.longitudes)
+    }
+
+    override fun hashCode() = 31 * latitudes.contentHashCode() + longitudes.contentHashCode()
+
+    override fun toString() = "GeoPolygon(${(0 until size).joinToString { "[${latitudes[it]}, ${longitudes[it]}]" }})"
+}
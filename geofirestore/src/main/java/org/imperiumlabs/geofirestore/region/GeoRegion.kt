@@ -0,0 +1,54 @@
+package org.imperiumlabs.geofirestore.region
+
+/**
+ * An area of the earth that can be queried.
+ *
+ * A region is described by its bounding box, which is used to start the covering, by the way
+ * it relates to the cells of a covering and by an exact membership test used to filter the
+ * documents read.
+ */
+interface GeoRegion {
+
+    /**
+     * How a cell relates to a region.
+     */
+    enum class Relation {
+        // The cell and the region don't overlap
+        DISJOINT,
+        // The cell may be partly inside the region
+        INTERSECTS,
+        // The cell is entirely inside the region
+        INSIDE
+    }
+
+    // The southern edge of the bounding box
+    val minLatitude: Double
+
+    // The western edge of the bounding box, greater than maxLongitude if the box crosses the antimeridian
+    val minLongitude: Double
+
+    // The northern edge of the bounding box
+    val maxLatitude: Double
+
+    // The eastern edge of the bounding box
+    val maxLongitude: Double
+
+    /**
+     * @param latitude The latitude in the range [-90, 90]
+     * @param longitude The longitude in the range [-180, 180]
+     * @return True if the location is inside the region
+     */
+    fun contains(latitude: Double, longitude: Double): Boolean
+
+    /**
+     * Relate a cell to the region. The answer must be conservative: DISJOINT and INSIDE only
+     * when certain, INTERSECTS otherwise.
+     *
+     * @param minLatitude The southern edge of the cell
+     * @param minLongitude The western edge of the cell
+     * @param maxLatitude The northern edge of the cell
+     * @param maxLongitude The eastern edge of the cell, the cell doesn't cross the antimeridian
+     * @return How the cell relates to the region
+     */
+    fun relate(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double): Relation
+}
@@ -0,0 +1,93 @@
+package org.imperiumlabs.geofirestore.region
+
+/**
+ * The locations inside any of several regions.
+ *
+ * A cell is disjoint from the union if it is disjoint from every region, and inside it as soon
+ * as it is inside one of them. The bounding box leaves out the widest band of longitudes none
+ * of the regions reaches.
+ */
+class GeoUnion(regions: List<GeoRegion>) : GeoRegion {
+
+    // The regions of the union
+    val regions: List<GeoRegion> = regions.toList()
+
+    override val minLatitude: Double
+    override val minLongitude: Double
+    override val maxLatitude: Double
+    override val maxLongitude: Double
+
+    init {
+        if (this.regions.isEmpty())
+            throw IllegalArgumentException("A union needs at least one region!")
+        var south = 90.0
+        var north = -90.0
+        // The longitudes of the regions, those crossing the antimeridian split in two
+        val arcs = ArrayList<DoubleArray>()
+        for (region in this.regions) {
+            south = Math.min(south, region.minLatitude)
+            north = Math.max(north, region.maxLatitude)
+            if (region.minLongitude <= region.maxLongitude) {
+                arcs.add(doubleArrayOf(region.minLongitude, region.maxLongitude))
+            } else {
+                arcs.add(doubleArrayOf(region.minLongitude, 180.0))
+                arcs.add(doubleArrayOf(-180.0, region.maxLongitude))
+            }
+        }
+        minLatitude = south
+        maxLatitude = north
+
+        arcs.sortBy { it[0] }
+        // The gap around the antimeridian, then those between the arcs
+        var reach = arcs[0][1]
+        var widestGap = 0.0
+        var west = -180.0
+        var east = 180.0
+        for (i in 1 until arcs.size) {
+            val gap = arcs[i][0] - reach
+            if (gap > widestGap) {
+                widestGap = gap
+                west = arcs[i][0]
+                east = reach
+            }
+            reach = Math.max(reach, arcs[i][1])
+        }
+        val antimeridianGap = arcs[0][0] + 360 - reach
+        if (antimeridianGap > widestGap) {
+            widestGap = antimeridianGap
+            west = arcs[0][0]
+            east = reach
+        }
+        if (widestGap > 0) {
+            minLongitude = west
+            maxLongitude = east
+        } else {
+            minLongitude = -180.0
+            maxLongitude = 180.0
+        }
+    }
+
+    override fun contains(latitude: Double, longitude: Double) =
+            regions.any { it.contains(latitude, longitude) }
+
+    override fun relate(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double): GeoRegion.Relation {
+        var relation = GeoRegion.Relation.DISJOINT
+        for (region in regions) {
+            when (region.relate(minLatitude, minLongitude, maxLatitude, maxLongitude)) {
+                GeoRegion.Relation.INSIDE -> return GeoRegion.Relation.INSIDE
+                GeoRegion.Relation.INTERSECTS -> relation = GeoRegion.Relation.INTERSECTS
+                GeoRegion.Relation.DISJOINT -> {}
+            }
+        }
+        return relation
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (other == null || other !is GeoUnion) return false
+        return regions == other.regions
+    }
+
+    override fun hashCode() = regions.hashCode()
+
+    override fun toString() = "GeoUnion($regions)"
+}
@@ -12,6 +12,15 @@ object Base32Utils {
     //String representing the Base32 character map
     private const val BASE32_CHARS = "0123456789bcdefghjkmnpqrstuvwxyz"
 
+    //Maximal number of characters that fit in the bits of a Long
+    private const val MAX_CHARS_PER_LONG = 12
+
+    //Table mapping every ASCII character to its Base32 value, or -1 if it's not a Base32 character
+    private val BASE32_VALUES = IntArray(128) { -1 }.also { table ->
+        for (i in 0 until BASE32_CHARS.length)
+            table[BASE32_CHARS[i].toInt()] = i
+    }
+
     /*
      * This method convert a given value to his corresponding Base32 character
      */
@@ -25,7 +34,7 @@ object Base32Utils {
      * This method convert a given Base32 character to his corresponding value
      */
     fun base32CharToValue(base32Char: Char): Int {
-        val value = BASE32_CHARS.indexOf(base32Char)
+        val value = valueOrInvalid(base32Char)
         if (value == -1)
             throw IllegalArgumentException("Not a valid base32 char: $base32Char")
         return value
@@ -36,6 +45,60 @@ object Base32Utils {
      */
     fun isValidBase32String(string: String) =
             if (string.isNotEmpty())
-                string.matches("^[$BASE32_CHARS]*$".toRegex())
+                isValidBase32(string, 0, string.length)
             else false
+
+    /*
+     * This method check if the characters of a CharSequence between start (inclusive)
+     * and end (exclusive) are all valid Base32 characters
+     */
+    fun isValidBase32(chars: CharSequence, start: Int, end: Int): Boolean {
+        for (i in start until end)
+            if (valueOrInvalid(chars[i]) == -1) return false
+        return true
+    }
+
+    /*
+     * This method check if the characters of a CharArray between start (inclusive)
+     * and end (exclusive) are all valid Base32 characters
+     */
+    fun isValidBase32(chars: CharArray, start: Int, end: Int): Boolean {
+        for (i in start until end)
+            if (valueOrInvalid(chars[i]) == -1) return false
+        return true
+    }
+
+    /*
+     * This method convert the Base32 characters of a CharSequence between start (inclusive)
+     * and end (exclusive) to their concatenated values, right aligned in a Long
+     */
+    fun base32ToBits(chars: CharSequence, start: Int, end: Int): Long {
+        if (end - start > MAX_CHARS_PER_LONG)
+            throw IllegalArgumentException("Can't convert more than $MAX_CHARS_PER_LONG base32 chars to a Long")
+        var bits = 0L
+        for (i in start until end)
+            bits = (bits shl BITS_PER_BASE32_CHAR) or base32CharToValue(chars[i]).toLong()
+        return bits
+    }
+
+    /*
+     * This method convert the Base32 characters of a CharArray between start (inclusive)
+     * and end (exclusive) to their concatenated values, right aligned in a Long
+     */
+    fun base32ToBits(chars: CharArray, start: Int, end: Int): Long {
+        if (end - start > MAX_CHARS_PER_LONG)
+            throw IllegalArgumentException("Can't convert more than $MAX_CHARS_PER_LONG base32 chars to a Long")
+        var bits = 0L
+        for (i in start until end)
+            bits = (bits shl BITS_PER_BASE32_CHAR) or base32CharToValue(chars[i]).toLong()
+        return bits
+    }
+
+    /*
+     * Look up the value of a character, -1 if it's not a Base32 character
+     */
+    private fun valueOrInvalid(char: Char): Int {
+        val code = char.toInt()
+        return if (code < BASE32_VALUES.size) BASE32_VALUES[code] else -1
+    }
 }
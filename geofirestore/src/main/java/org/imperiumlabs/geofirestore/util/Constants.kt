@@ -4,6 +4,9 @@ package org.imperiumlabs.geofirestore.util
 
 object Constants {
 
+    // Meters in a kilometer, the unit of the radii passed to GeoFirestore
+    const val KILOMETER_TO_METER: Int = 1000
+
     // Length of a degree latitude at the equator
     const val METERS_PER_DEGREE_LATITUDE: Double = 110574.0
 
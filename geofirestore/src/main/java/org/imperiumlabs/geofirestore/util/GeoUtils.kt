@@ -24,6 +24,108 @@ object GeoUtils {
         return radius * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a))
     }
 
+    /*
+     * Minimal distance in meters from a location to a latitude/longitude box not crossing the antimeridian.
+     * For a given latitude the distance grows with the longitude delta, so outside the box
+     * the closest point lies on the nearest meridian edge.
+     */
+    fun distanceToBoundingBox(latitude: Double, longitude: Double,
+                              minLatitude: Double, minLongitude: Double,
+                              maxLatitude: Double, maxLongitude: Double): Double {
+        if (longitude >= minLongitude && longitude <= maxLongitude)
+            return distance(latitude, longitude, clamp(latitude, minLatitude, maxLatitude), longitude)
+        val deltaMin = longitudeDelta(longitude, minLongitude)
+        val deltaMax = longitudeDelta(longitude, maxLongitude)
+        val edge = if (deltaMin <= deltaMax) minLongitude else maxLongitude
+        val delta = Math.min(deltaMin, deltaMax)
+        if (delta >= 90)
+            return Math.min(distance(latitude, longitude, minLatitude, edge), distance(latitude, longitude, maxLatitude, edge))
+        // Latitude of the point of the edge meridian closest to the location
+        val closest = Math.toDegrees(Math.atan(Math.tan(Math.toRadians(latitude)) / Math.cos(Math.toRadians(delta))))
+        return distance(latitude, longitude, clamp(closest, minLatitude, maxLatitude), edge)
+    }
+
+    /*
+     * Minimal distance in meters from a location to the great circle segment between two points,
+     * for segments and distances well below a quarter of the circumference of the earth
+     */
+    fun distanceToSegment(latitude: Double, longitude: Double,
+                          latitude1: Double, longitude1: Double,
+                          latitude2: Double, longitude2: Double): Double {
+        val radius = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS) / 2
+        val distance13 = distance(latitude1, longitude1, latitude, longitude)
+        val distance12 = distance(latitude1, longitude1, latitude2, longitude2)
+        if (distance12 == 0.0 || distance13 == 0.0)
+            return distance13
+        val bearingDelta = bearing(latitude1, longitude1, latitude, longitude) - bearing(latitude1, longitude1, latitude2, longitude2)
+        // The location is behind the first point
+        if (Math.cos(bearingDelta) < 0)
+            return distance13
+        val angle13 = distance13 / radius
+        val crossTrack = Math.asin(Math.sin(angle13) * Math.sin(bearingDelta))
+        val alongTrack = Math.acos(clamp(Math.cos(angle13) / Math.cos(crossTrack), -1.0, 1.0))
+        // The location is beyond the second point
+        if (alongTrack * radius > distance12)
+            return distance(latitude2, longitude2, latitude, longitude)
+        return Math.abs(crossTrack) * radius
+    }
+
+    /*
+     * Initial bearing in radians, clockwise from the north, of the great circle from a point to another
+     */
+    fun bearing(latitude1: Double, longitude1: Double, latitude2: Double, longitude2: Double): Double {
+        val phi1 = Math.toRadians(latitude1)
+        val phi2 = Math.toRadians(latitude2)
+        val lambdaDelta = Math.toRadians(longitude2 - longitude1)
+        return Math.atan2(Math.sin(lambdaDelta) * Math.cos(phi2),
+                Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(lambdaDelta))
+    }
+
+    /*
+     * Maximal distance in meters from a location to a latitude/longitude box not crossing the antimeridian.
+     * It's exact when the farthest meridian edge is less than 90 degrees away, otherwise half
+     * the mean circumference of the earth, the largest possible distance, is returned.
+     */
+    fun maxDistanceToBoundingBox(latitude: Double, longitude: Double,
+                                 minLatitude: Double, minLongitude: Double,
+                                 maxLatitude: Double, maxLongitude: Double): Double {
+        val deltaMin = longitudeDelta(longitude, minLongitude)
+        val deltaMax = longitudeDelta(longitude, maxLongitude)
+        if (Math.max(deltaMin, deltaMax) >= 90)
+            return Math.PI * (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS) / 2
+        val edge = if (deltaMin >= deltaMax) minLongitude else maxLongitude
+        return Math.max(distance(latitude, longitude, minLatitude, edge), distance(latitude, longitude, maxLatitude, edge))
+    }
+
+    /*
+     * Angular distance in degrees, in the range [0, 180], between two longitudes
+     */
+    fun longitudeDelta(longitude1: Double, longitude2: Double): Double {
+        val delta = Math.abs(longitude1 - longitude2) % 360
+        return if (delta > 180) 360 - delta else delta
+    }
+
+    /*
+     * Area in square meters of a latitude/longitude box not crossing the antimeridian,
+     * on a sphere of the mean radius of the earth
+     */
+    fun boundingBoxArea(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double): Double {
+        val radius = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS) / 2
+        return radius * radius * Math.toRadians(maxLongitude - minLongitude) *
+                (Math.sin(Math.toRadians(maxLatitude)) - Math.sin(Math.toRadians(minLatitude)))
+    }
+
+    /*
+     * Area in square meters of a circle of the given radius in meters, a spherical cap
+     * on a sphere of the mean radius of the earth
+     */
+    fun circleArea(radius: Double): Double {
+        val earthRadius = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS) / 2
+        return 2 * Math.PI * earthRadius * earthRadius * (1 - Math.cos(Math.min(radius / earthRadius, Math.PI)))
+    }
+
+    private fun clamp(value: Double, min: Double, max: Double) = Math.max(min, Math.min(max, value))
+
     fun distanceToLatitudeDegrees(distance: Double) = distance / Constants.METERS_PER_DEGREE_LATITUDE
 
     fun distanceToLongitudeDegrees(distance: Double, latitude: Double): Double {
@@ -46,7 +148,8 @@ object GeoUtils {
 
     fun capRadius(radius: Double): Double {
         if (radius > MAX_SUPPORTED_RADIUS) {
-            GeoFirestore.LOGGER.warning("The radius is bigger than $MAX_SUPPORTED_RADIUS and hence we'll use that value")
+            GeoFirestore.LOGGER.warning("The radius is bigger than $MAX_SUPPORTED_RADIUS and hence we'll use that value, " +
+                    "use a GeoPartitionedQuery for larger radii")
             return MAX_SUPPORTED_RADIUS.toDouble()
         }
         return radius
@@ -0,0 +1,55 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.region.GeoCircle
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class CachingKeySchemeTest {
+
+    private fun randomCenter(random: Random) =
+            GeoLocation(random.nextDouble() * 140 - 70, random.nextDouble() * 360 - 180)
+
+    @Test
+    fun cachedQueries_coverEveryCircleOfTheirBucket() {
+        val random = Random(61)
+        for (delegate in listOf(GeoHashKeyScheme(), GeoHashKeyScheme(GeoHashKeyScheme.Planner.Z_ORDER_RANGES), HilbertKeyScheme())) {
+            val scheme = CachingKeyScheme(delegate)
+            repeat(50) {
+                val center = randomCenter(random)
+                val radius = Math.pow(10.0, 2 + random.nextDouble() * 3.5)
+                // Circles moving a little and resizing a little mostly share the key of the first one
+                repeat(20) {
+                    val location = GeoLocation(
+                            center.latitude + (random.nextDouble() - 0.5) * radius * 1e-8,
+                            center.longitude + (random.nextDouble() - 0.5) * radius * 1e-8)
+                    val circleRadius = radius * (1 + (random.nextDouble() - 0.5) * 0.05)
+                    val queries = scheme.queriesAtLocation(location, circleRadius)
+                    // Sampled a little inside the circle, the coverings use a slightly different distance
+                    CoveringAssert.assertCovers(scheme, queries, GeoCircle(location, circleRadius * 0.95), random, 200)
+                }
+            }
+            assertTrue("No covering of $scheme was reused", scheme.hitCount > scheme.missCount)
+        }
+    }
+
+    @Test
+    fun queriesAtLocation_reusesTheCachedCoveringUpToTheCapacity() {
+        val scheme = CachingKeyScheme(GeoHashKeyScheme(), 2)
+        val center = GeoLocation(48.8566, 2.3522)
+        val queries = scheme.queriesAtLocation(center, 1000.0)
+        assertSame(queries, scheme.queriesAtLocation(center, 1000.0))
+        assertEquals(1L, scheme.hitCount)
+        assertEquals(1L, scheme.missCount)
+
+        scheme.queriesAtLocation(GeoLocation(40.7128, -74.0060), 1000.0)
+        scheme.queriesAtLocation(GeoLocation(35.6762, 139.6503), 1000.0)
+        assertEquals(2, scheme.size)
+        // The least recently used covering was evicted
+        scheme.queriesAtLocation(center, 1000.0)
+        assertEquals(4L, scheme.missCount)
+    }
+}
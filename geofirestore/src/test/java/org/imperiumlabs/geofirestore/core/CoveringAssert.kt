@@ -0,0 +1,30 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.imperiumlabs.geofirestore.region.GeoRegion
+import org.junit.Assert.assertTrue
+import java.util.Random
+
+/*
+ * Brute force checks of the coverings planned by the key schemes
+ */
+internal object CoveringAssert {
+
+    /*
+     * Assert that the key of every location sampled inside a region is in one of the ranges
+     */
+    fun assertCovers(scheme: SpatialKeyScheme, queries: Set<GeoHashQuery>, region: GeoRegion, random: Random, samples: Int = 2000) {
+        val latitudeSpan = region.maxLatitude - region.minLatitude
+        val longitudeSpan = if (region.minLongitude <= region.maxLongitude) region.maxLongitude - region.minLongitude
+        else region.maxLongitude - region.minLongitude + 360
+        repeat(samples) {
+            val latitude = region.minLatitude + random.nextDouble() * latitudeSpan
+            var longitude = region.minLongitude + random.nextDouble() * longitudeSpan
+            if (longitude > 180) longitude -= 360
+            if (region.contains(latitude, longitude)) {
+                val key = scheme.encode(latitude, longitude)
+                assertTrue("[$latitude, $longitude] of $region isn't covered by $queries",
+                        queries.any { it.containsGeoHash(key) })
+            }
+        }
+    }
+}
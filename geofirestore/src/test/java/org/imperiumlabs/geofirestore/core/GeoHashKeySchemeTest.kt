@@ -0,0 +1,149 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.region.GeoBoundingBox
+import org.imperiumlabs.geofirestore.region.GeoCircle
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class GeoHashKeySchemeTest {
+
+    private val schemes = listOf(
+            GeoHashKeyScheme(),
+            GeoHashKeyScheme(GeoHashKeyScheme.Planner.Z_ORDER_RANGES),
+            GeoHashKeyScheme(GeoHashKeyScheme.Planner.Z_ORDER_RANGES, 1),
+            GeoHashKeyScheme(CoveringCostModel.MINIMIZE_READS),
+            GeoHashKeyScheme(CoveringCostModel.BALANCED),
+            GeoHashKeyScheme(CoveringCostModel.MINIMIZE_LISTENERS))
+
+    private fun randomCenter(random: Random) =
+            GeoLocation(random.nextDouble() * 140 - 70, random.nextDouble() * 360 - 180)
+
+    @Test
+    fun queriesAtLocation_coverTheCircle() {
+        val random = Random(21)
+        repeat(100) {
+            val center = randomCenter(random)
+            val radius = Math.pow(10.0, 2 + random.nextDouble() * 3.5)
+            // Sampled a little inside the circle, the coverings use a slightly different distance
+            val inner = GeoCircle(center, radius * 0.95)
+            for (scheme in schemes) {
+                val queries = scheme.queriesAtLocation(center, radius)
+                CoveringAssert.assertCovers(scheme, queries, inner, random, 500)
+            }
+        }
+    }
+
+    @Test
+    fun zOrderQueries_respectMaxRanges() {
+        val random = Random(22)
+        repeat(100) {
+            val maxRanges = 1 + random.nextInt(8)
+            val scheme = GeoHashKeyScheme(GeoHashKeyScheme.Planner.Z_ORDER_RANGES, maxRanges)
+            val queries = scheme.queriesAtLocation(randomCenter(random), Math.pow(10.0, 2 + random.nextDouble() * 3.5))
+            assertTrue(queries.size <= maxRanges)
+        }
+    }
+
+    @Test
+    fun costBasedQueries_respectBothMaxRanges() {
+        val random = Random(26)
+        repeat(100) {
+            val maxRanges = 1 + random.nextInt(8)
+            val costModel = CoveringCostModel(1.0, 1 + random.nextInt(8))
+            val scheme = GeoHashKeyScheme(GeoHashKeyScheme.Planner.COST_BASED, maxRanges, costModel)
+            val center = randomCenter(random)
+            val radius = Math.pow(10.0, 2 + random.nextDouble() * 3.5)
+            val queries = scheme.queriesAtLocation(center, radius)
+            assertTrue(queries.size <= Math.min(maxRanges, costModel.maxRanges))
+            CoveringAssert.assertCovers(scheme, queries, GeoCircle(center, radius * 0.95), random, 200)
+        }
+        assertEquals(CoveringCostModel.MINIMIZE_READS.maxRanges, GeoHashKeyScheme(CoveringCostModel.MINIMIZE_READS).maxRanges)
+    }
+
+    @Test
+    fun queriesForRegion_coverBoundingBoxes() {
+        val random = Random(23)
+        repeat(100) {
+            val minLatitude = random.nextDouble() * 160 - 80
+            val minLongitude = random.nextDouble() * 360 - 180
+            val maxLatitude = Math.min(90.0, minLatitude + random.nextDouble() * 10)
+            // Boxes may cross the antimeridian
+            var maxLongitude = minLongitude + random.nextDouble() * 10
+            if (maxLongitude > 180) maxLongitude -= 360
+            val box = GeoBoundingBox(minLatitude, minLongitude, maxLatitude, maxLongitude)
+            for (scheme in schemes) {
+                val queries = scheme.queriesForRegion(box)
+                assertTrue(queries.size <= scheme.maxRanges)
+                CoveringAssert.assertCovers(scheme, queries, box, random, 500)
+            }
+        }
+    }
+
+    @Test
+    fun queriesForRegion_coverCircles() {
+        val random = Random(24)
+        repeat(50) {
+            val circle = GeoCircle(randomCenter(random), Math.pow(10.0, 2 + random.nextDouble() * 3.5))
+            val scheme = GeoHashKeyScheme()
+            CoveringAssert.assertCovers(scheme, scheme.queriesForRegion(circle), circle, random)
+        }
+    }
+
+    @Test
+    fun queryForCell_matchesTheCellsOfTheGrid() {
+        val scheme = GeoHashKeyScheme()
+        val random = Random(25)
+        repeat(200) {
+            val level = 1 + random.nextInt(scheme.maxCellLevel)
+            val latitude = random.nextDouble() * 180 - 90
+            val longitude = random.nextDouble() * 360 - 180
+            val row = GeoHash.quantize(latitude, -90.0, 90.0, level)
+            val column = GeoHash.quantize(longitude, -180.0, 180.0, level)
+            val query = scheme.queryForCell(level, column, row)
+            assertTrue(query.containsGeoHash(scheme.encode(latitude, longitude)))
+            // The range is exactly the cell
+            val cells = scheme.cellsOf(query)
+            assertEquals(4, cells.size)
+            assertEquals(180.0 / (1L shl level), cells[GeoHash.MAX_LATITUDE] - cells[GeoHash.MIN_LATITUDE], 1e-9)
+            assertEquals(-90.0 + row * 180.0 / (1L shl level), cells[GeoHash.MIN_LATITUDE], 1e-9)
+            assertEquals(-180.0 + column * 360.0 / (1L shl level), cells[GeoHash.MIN_LONGITUDE], 1e-9)
+        }
+    }
+
+    @Test
+    fun coalesce_mergesRangesOfDifferentPrecisions() {
+        val merged = GeoHashQuery.coalesce(listOf(GeoHashQuery("9q8yz", "9q8z0"), GeoHashQuery("9q8z", "9q92")))
+        assertEquals(listOf(GeoHashQuery("9q8yz", "9q920")), merged)
+        assertTrue(GeoHashKeyScheme().cellsOf(merged[0]).isNotEmpty())
+    }
+
+    @Test
+    fun cellsOf_decodesTheRangesOfAMultiCirclePlan() {
+        val random = Random(27)
+        val scheme = GeoHashKeyScheme()
+        repeat(50) {
+            // Circles of different radii have coverings of different precisions, merged like a GeoMultiCircleQuery
+            val center = randomCenter(random)
+            val circles = listOf(GeoCircle(center, Math.pow(10.0, 2 + random.nextDouble() * 2)),
+                    GeoCircle(GeoLocation(center.latitude + random.nextDouble() * 0.02, center.longitude),
+                            Math.pow(10.0, 3 + random.nextDouble() * 2)))
+            val queries = GeoHashQuery.coalesce(circles.flatMap { scheme.queriesAtLocation(it.center, it.radius) })
+            for (circle in circles)
+                CoveringAssert.assertCovers(scheme, queries, GeoCircle(circle.center, circle.radius * 0.95), random, 200)
+            for (query in queries) {
+                assertTrue(query.endValue == "~" || query.endValue.length == query.startValue.length)
+                val cells = scheme.cellsOf(query)
+                assertTrue(cells.isNotEmpty())
+                // The cells are those of the keys of the range
+                repeat(200) {
+                    val latitude = cells[GeoHash.MIN_LATITUDE] + random.nextDouble() * (cells[GeoHash.MAX_LATITUDE] - cells[GeoHash.MIN_LATITUDE])
+                    val longitude = cells[GeoHash.MIN_LONGITUDE] + random.nextDouble() * (cells[GeoHash.MAX_LONGITUDE] - cells[GeoHash.MIN_LONGITUDE])
+                    assertTrue(query.containsGeoHash(scheme.encode(latitude, longitude)))
+                }
+            }
+        }
+    }
+}
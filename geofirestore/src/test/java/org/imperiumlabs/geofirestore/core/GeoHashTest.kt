@@ -0,0 +1,195 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class GeoHashTest {
+
+    private fun randomLatitude(random: Random) = random.nextDouble() * 180 - 90
+
+    private fun randomLongitude(random: Random) = random.nextDouble() * 360 - 180
+
+    private fun bounds(packed: Long): DoubleArray {
+        val bounds = DoubleArray(4)
+        GeoHash.decodeBounds(packed, bounds, 0)
+        return bounds
+    }
+
+    @Test
+    fun encode_matchesKnownGeoHashes() {
+        assertEquals("ezs42", GeoHash.toBase32(GeoHash.encode(42.6, -5.6, 5)))
+        assertEquals("u4pruydqqvj", GeoHash.toBase32(GeoHash.encode(57.64911, 10.40744, 11)))
+        assertTrue(GeoHash(57.64911, 10.40744, 16).geoHashString.startsWith("u4pruydqqvj"))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun encode_rejectsInvalidCoordinates() {
+        GeoHash.encode(91.0, 0.0, 5)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun encode_rejectsTooLargePrecision() {
+        GeoHash.encode(0.0, 0.0, GeoHash.MAX_PACKED_PRECISION + 1)
+    }
+
+    @Test
+    fun encode_roundTripsThroughBase32AndBounds() {
+        val random = Random(42)
+        val stringBounds = DoubleArray(4)
+        repeat(1000) {
+            val latitude = randomLatitude(random)
+            val longitude = randomLongitude(random)
+            // Longer than a packed geohash, made by the string encoder
+            val longHash = GeoHash(latitude, longitude, GeoHash.MAX_PACKED_PRECISION + 1).geoHashString
+            for (precision in 1..GeoHash.MAX_PACKED_PRECISION) {
+                val packed = GeoHash.encode(latitude, longitude, precision)
+                val hash = GeoHash.toBase32(packed)
+                assertEquals(precision, GeoHash.precisionOf(packed))
+                assertEquals(longHash.substring(0, precision), hash)
+                assertEquals(packed, GeoHash.fromBase32(hash))
+                assertEquals(packed, GeoHash(hash).packedValue)
+
+                val bounds = bounds(packed)
+                GeoHash.decodeBounds(hash, stringBounds, 0)
+                assertArrayEquals(stringBounds, bounds, 1e-12)
+                assertTrue(latitude >= bounds[GeoHash.MIN_LATITUDE] && latitude <= bounds[GeoHash.MAX_LATITUDE])
+                assertTrue(longitude >= bounds[GeoHash.MIN_LONGITUDE] && longitude <= bounds[GeoHash.MAX_LONGITUDE])
+            }
+        }
+    }
+
+    @Test
+    fun decodeCenter_isInsideTheCellWithHalfItsSizeAsError() {
+        val random = Random(7)
+        val center = DoubleArray(4)
+        repeat(200) {
+            val packed = GeoHash.encode(randomLatitude(random), randomLongitude(random), 1 + random.nextInt(GeoHash.MAX_PACKED_PRECISION))
+            val bounds = bounds(packed)
+            GeoHash.decodeCenter(packed, center, 0)
+            assertEquals((bounds[GeoHash.MIN_LATITUDE] + bounds[GeoHash.MAX_LATITUDE]) / 2, center[GeoHash.CENTER_LATITUDE], 1e-12)
+            assertEquals((bounds[GeoHash.MIN_LONGITUDE] + bounds[GeoHash.MAX_LONGITUDE]) / 2, center[GeoHash.CENTER_LONGITUDE], 1e-12)
+            assertEquals((bounds[GeoHash.MAX_LATITUDE] - bounds[GeoHash.MIN_LATITUDE]) / 2, center[GeoHash.LATITUDE_ERROR], 1e-12)
+            assertEquals((bounds[GeoHash.MAX_LONGITUDE] - bounds[GeoHash.MIN_LONGITUDE]) / 2, center[GeoHash.LONGITUDE_ERROR], 1e-12)
+            // The center encodes back to its cell
+            assertEquals(packed, GeoHash.encode(center[GeoHash.CENTER_LATITUDE], center[GeoHash.CENTER_LONGITUDE], GeoHash.precisionOf(packed)))
+        }
+    }
+
+    @Test
+    fun neighbor_sharesAnEdgeWithTheCell() {
+        val random = Random(3)
+        repeat(500) {
+            // Rows of a single character are 45 degrees high, finer ones stay away from the poles
+            val precision = 2 + random.nextInt(GeoHash.MAX_PACKED_PRECISION - 1)
+            val packed = GeoHash.encode(random.nextDouble() * 120 - 60, randomLongitude(random), precision)
+            val cell = bounds(packed)
+            val north = bounds(GeoHash.north(packed))
+            assertEquals(cell[GeoHash.MAX_LATITUDE], north[GeoHash.MIN_LATITUDE], 1e-12)
+            assertEquals(cell[GeoHash.MIN_LONGITUDE], north[GeoHash.MIN_LONGITUDE], 1e-12)
+            val south = bounds(GeoHash.south(packed))
+            assertEquals(cell[GeoHash.MIN_LATITUDE], south[GeoHash.MAX_LATITUDE], 1e-12)
+            assertEquals(packed, GeoHash.north(GeoHash.south(packed)))
+            assertEquals(packed, GeoHash.east(GeoHash.west(packed)))
+            assertEquals(GeoHash.northEast(packed), GeoHash.north(GeoHash.east(packed)))
+            assertEquals(GeoHash.southWest(packed), GeoHash.south(GeoHash.west(packed)))
+            assertEquals(GeoHash.neighbor(packed, 2, -3), GeoHash.north(GeoHash.north(GeoHash.west(GeoHash.west(GeoHash.west(packed))))))
+        }
+    }
+
+    @Test
+    fun neighbor_wrapsAroundTheAntimeridian() {
+        for (precision in 1..GeoHash.MAX_PACKED_PRECISION) {
+            val eastmost = GeoHash.encode(10.0, 180.0, precision)
+            val wrapped = bounds(GeoHash.east(eastmost))
+            assertEquals(-180.0, wrapped[GeoHash.MIN_LONGITUDE], 0.0)
+            assertEquals(bounds(eastmost)[GeoHash.MIN_LATITUDE], wrapped[GeoHash.MIN_LATITUDE], 0.0)
+            assertEquals(eastmost, GeoHash.west(GeoHash.east(eastmost)))
+
+            val westmost = GeoHash.encode(-10.0, -180.0, precision)
+            assertEquals(180.0, bounds(GeoHash.west(westmost))[GeoHash.MAX_LONGITUDE], 0.0)
+            assertEquals(westmost, GeoHash.neighbor(westmost, 0, 1 shl ((precision * 5 + 1) / 2)))
+        }
+    }
+
+    @Test
+    fun neighbor_isClampedAtThePoles() {
+        for (precision in 1..GeoHash.MAX_PACKED_PRECISION) {
+            val northmost = GeoHash.encode(90.0, 45.0, precision)
+            assertEquals(northmost, GeoHash.north(northmost))
+            assertEquals(northmost, GeoHash.neighbor(northmost, 1000, 0))
+            assertEquals(GeoHash.east(northmost), GeoHash.northEast(northmost))
+
+            val southmost = GeoHash.encode(-90.0, -45.0, precision)
+            assertEquals(southmost, GeoHash.south(southmost))
+            assertEquals(GeoHash.west(southmost), GeoHash.southWest(southmost))
+            assertEquals(-90.0, bounds(GeoHash.south(southmost))[GeoHash.MIN_LATITUDE], 0.0)
+        }
+    }
+
+    @Test
+    fun parentAndChildren_nestCells() {
+        val random = Random(11)
+        val children = LongArray(GeoHash.CHILD_COUNT)
+        val siblings = LongArray(GeoHash.CHILD_COUNT)
+        repeat(200) {
+            val latitude = randomLatitude(random)
+            val longitude = randomLongitude(random)
+            for (precision in 2..GeoHash.MAX_PACKED_PRECISION) {
+                val packed = GeoHash.encode(latitude, longitude, precision)
+                val parent = GeoHash.parent(packed)
+                assertEquals(GeoHash.encode(latitude, longitude, precision - 1), parent)
+
+                assertEquals(GeoHash.CHILD_COUNT, GeoHash.children(parent, children, 0))
+                assertTrue(children.contains(packed))
+                for (i in 0 until GeoHash.CHILD_COUNT) {
+                    assertEquals(parent, GeoHash.parent(children[i]))
+                    if (i > 0) {
+                        assertTrue(java.lang.Long.compareUnsigned(children[i - 1], children[i]) < 0)
+                        assertTrue(GeoHash.toBase32(children[i - 1]) < GeoHash.toBase32(children[i]))
+                    }
+                }
+
+                GeoHash.siblings(packed, siblings, 0)
+                assertArrayEquals(children, siblings)
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun parent_rejectsSingleCharacterGeoHashes() {
+        GeoHash.parent(GeoHash.encode(0.0, 0.0, 1))
+    }
+
+    @Test
+    fun packedOrder_matchesBase32Order() {
+        val random = Random(5)
+        repeat(2000) {
+            val precision = 1 + random.nextInt(GeoHash.MAX_PACKED_PRECISION)
+            val a = GeoHash.encode(randomLatitude(random), randomLongitude(random), precision)
+            val b = GeoHash.encode(randomLatitude(random), randomLongitude(random), precision)
+            val expected = Integer.signum(GeoHash.toBase32(a).compareTo(GeoHash.toBase32(b)))
+            assertEquals(expected, Integer.signum(java.lang.Long.compareUnsigned(a, b)))
+            assertEquals(expected, Integer.signum(GeoHash.compareToBase32(a, GeoHash.toBase32(b))))
+        }
+    }
+
+    @Test
+    fun compareToBase32_matchesStringComparison() {
+        val random = Random(13)
+        repeat(2000) {
+            val a = GeoHash.encode(randomLatitude(random), randomLongitude(random), 1 + random.nextInt(GeoHash.MAX_PACKED_PRECISION))
+            val hash = GeoHash.toBase32(a)
+            val other = GeoHash.toBase32(GeoHash.encode(randomLatitude(random), randomLongitude(random),
+                    1 + random.nextInt(GeoHash.MAX_PACKED_PRECISION)))
+            assertEquals(Integer.signum(hash.compareTo(other)), Integer.signum(GeoHash.compareToBase32(a, other)))
+            assertEquals(0, GeoHash.compareToBase32(a, hash))
+            // A prefix sorts before its extensions, and every key before the "~" bound of the queries
+            assertTrue(GeoHash.compareToBase32(a, hash + "0") < 0)
+            assertTrue(GeoHash.compareToBase32(a, hash.substring(0, hash.length - 1)) > 0)
+            assertTrue(GeoHash.compareToBase32(a, "~") < 0)
+        }
+    }
+}
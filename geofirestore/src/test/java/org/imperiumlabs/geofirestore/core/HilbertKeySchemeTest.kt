@@ -0,0 +1,147 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.region.GeoBoundingBox
+import org.imperiumlabs.geofirestore.region.GeoCircle
+import org.imperiumlabs.geofirestore.util.Base32Utils
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class HilbertKeySchemeTest {
+
+    private val schemes = listOf(
+            HilbertKeyScheme(),
+            HilbertKeyScheme(16),
+            HilbertKeyScheme(HilbertKeyScheme.DEFAULT_ORDER, 1),
+            HilbertKeyScheme(HilbertKeyScheme.MAX_ORDER, 32))
+
+    private fun randomCenter(random: Random) =
+            GeoLocation(random.nextDouble() * 140 - 70, random.nextDouble() * 360 - 180)
+
+    @Test
+    fun xyToIndex_roundTripsEveryCellOfSmallGrids() {
+        val xy = LongArray(2)
+        for (order in 1..6) {
+            val side = 1L shl order
+            val seen = BooleanArray((side * side).toInt())
+            for (x in 0 until side) {
+                for (y in 0 until side) {
+                    val index = HilbertKeyScheme.xyToIndex(order, x, y)
+                    assertTrue(index >= 0 && index < side * side)
+                    seen[index.toInt()] = true
+                    HilbertKeyScheme.indexToXy(order, index, xy)
+                    assertEquals(x, xy[0])
+                    assertEquals(y, xy[1])
+                }
+            }
+            // The curve visits every cell once
+            assertTrue(seen.all { it })
+        }
+    }
+
+    @Test
+    fun xyToIndex_roundTripsRandomCells() {
+        val random = Random(31)
+        val xy = LongArray(2)
+        for (order in intArrayOf(HilbertKeyScheme.DEFAULT_ORDER, HilbertKeyScheme.MAX_ORDER)) {
+            repeat(1000) {
+                val x = random.nextLong() and ((1L shl order) - 1)
+                val y = random.nextLong() and ((1L shl order) - 1)
+                HilbertKeyScheme.indexToXy(order, HilbertKeyScheme.xyToIndex(order, x, y), xy)
+                assertEquals(x, xy[0])
+                assertEquals(y, xy[1])
+            }
+        }
+    }
+
+    @Test
+    fun indexToXy_movesToANeighborAtEveryStep() {
+        val previous = LongArray(2)
+        val current = LongArray(2)
+        for (order in 1..5) {
+            HilbertKeyScheme.indexToXy(order, 0, previous)
+            for (index in 1 until (1L shl (2 * order))) {
+                HilbertKeyScheme.indexToXy(order, index, current)
+                assertEquals(1L, Math.abs(current[0] - previous[0]) + Math.abs(current[1] - previous[1]))
+                System.arraycopy(current, 0, previous, 0, 2)
+            }
+        }
+    }
+
+    @Test
+    fun encode_keysTheCellOfTheLocation() {
+        val random = Random(32)
+        val xy = LongArray(2)
+        for (scheme in schemes) {
+            val order = scheme.order
+            repeat(500) {
+                val latitude = random.nextDouble() * 180 - 90
+                val longitude = random.nextDouble() * 360 - 180
+                val key = scheme.encode(latitude, longitude)
+                val unusedBits = GeoHash.precisionOf(key) * Base32Utils.BITS_PER_BASE32_CHAR - 2 * order
+                HilbertKeyScheme.indexToXy(order, GeoHash.bitsOf(key) ushr unusedBits, xy)
+                val latitudeSize = 180.0 / (1L shl order)
+                val longitudeSize = 360.0 / (1L shl order)
+                assertTrue(latitude >= -90.0 + xy[1] * latitudeSize && latitude <= -90.0 + (xy[1] + 1) * latitudeSize)
+                assertTrue(longitude >= -180.0 + xy[0] * longitudeSize && longitude <= -180.0 + (xy[0] + 1) * longitudeSize)
+            }
+        }
+    }
+
+    @Test
+    fun queriesAtLocation_coverTheCircle() {
+        val random = Random(33)
+        repeat(100) {
+            val center = randomCenter(random)
+            val radius = Math.pow(10.0, 2 + random.nextDouble() * 3.5)
+            // Sampled a little inside the circle, the coverings use a slightly different distance
+            val inner = GeoCircle(center, radius * 0.95)
+            for (scheme in schemes) {
+                val queries = scheme.queriesAtLocation(center, radius)
+                assertTrue(queries.size <= scheme.maxRanges)
+                CoveringAssert.assertCovers(scheme, queries, inner, random, 500)
+            }
+        }
+    }
+
+    @Test
+    fun queriesForRegion_coverBoundingBoxes() {
+        val random = Random(34)
+        repeat(100) {
+            val minLatitude = random.nextDouble() * 160 - 80
+            val minLongitude = random.nextDouble() * 360 - 180
+            val maxLatitude = Math.min(90.0, minLatitude + random.nextDouble() * 10)
+            // Boxes may cross the antimeridian
+            var maxLongitude = minLongitude + random.nextDouble() * 10
+            if (maxLongitude > 180) maxLongitude -= 360
+            val box = GeoBoundingBox(minLatitude, minLongitude, maxLatitude, maxLongitude)
+            for (scheme in schemes) {
+                val queries = scheme.queriesForRegion(box)
+                assertTrue(queries.size <= scheme.maxRanges)
+                CoveringAssert.assertCovers(scheme, queries, box, random, 500)
+            }
+        }
+    }
+
+    @Test
+    fun queryForCell_isExactlyTheCell() {
+        val scheme = HilbertKeyScheme()
+        val random = Random(35)
+        repeat(200) {
+            val level = 1 + random.nextInt(scheme.maxCellLevel)
+            val latitude = random.nextDouble() * 180 - 90
+            val longitude = random.nextDouble() * 360 - 180
+            val row = GeoHash.quantize(latitude, -90.0, 90.0, level)
+            val column = GeoHash.quantize(longitude, -180.0, 180.0, level)
+            val query = scheme.queryForCell(level, column, row)
+            assertTrue(query.containsGeoHash(scheme.encode(latitude, longitude)))
+            val cells = scheme.cellsOf(query)
+            assertEquals(4, cells.size)
+            assertEquals(-90.0 + row * 180.0 / (1L shl level), cells[GeoHash.MIN_LATITUDE], 1e-9)
+            assertEquals(-180.0 + column * 360.0 / (1L shl level), cells[GeoHash.MIN_LONGITUDE], 1e-9)
+            assertEquals(180.0 / (1L shl level), cells[GeoHash.MAX_LATITUDE] - cells[GeoHash.MIN_LATITUDE], 1e-9)
+        }
+    }
+}
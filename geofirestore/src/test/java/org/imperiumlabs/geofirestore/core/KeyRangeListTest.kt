@@ -0,0 +1,137 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class KeyRangeListTest {
+
+    private val bitCount = 10
+
+    private fun randomRanges(random: Random): KeyRangeList {
+        val ranges = KeyRangeList(bitCount)
+        repeat(1 + random.nextInt(30)) {
+            val start = random.nextInt(1000).toLong()
+            ranges.add(start, start + 1 + random.nextInt(24))
+        }
+        return ranges
+    }
+
+    private fun covered(ranges: KeyRangeList): BooleanArray {
+        val keys = BooleanArray(1 shl bitCount)
+        for (i in 0 until ranges.size)
+            for (key in ranges.start(i) until ranges.end(i))
+                keys[key.toInt()] = true
+        return keys
+    }
+
+    private fun assertSortedAndDisjoint(ranges: KeyRangeList) {
+        for (i in 0 until ranges.size) {
+            assertTrue(ranges.start(i) < ranges.end(i))
+            // Adjacent ranges are merged, so a gap is at least one key
+            if (i > 0) assertTrue(ranges.end(i - 1) < ranges.start(i))
+        }
+    }
+
+    @Test
+    fun sortAndMerge_keepsTheUnionOfTheRanges() {
+        val random = Random(1)
+        repeat(500) {
+            val ranges = randomRanges(random)
+            val expected = covered(ranges)
+            ranges.sortAndMerge()
+            assertSortedAndDisjoint(ranges)
+            assertArrayEquals(expected, covered(ranges))
+        }
+    }
+
+    @Test
+    fun sortAndMerge_mergesAdjacentAndNestedRanges() {
+        val ranges = KeyRangeList(bitCount)
+        ranges.add(10, 20)
+        ranges.add(0, 5)
+        ranges.add(5, 8)
+        ranges.add(12, 15)
+        ranges.add(30, 31)
+        ranges.sortAndMerge()
+        assertEquals(3, ranges.size)
+        assertEquals(0L, ranges.start(0))
+        assertEquals(8L, ranges.end(0))
+        assertEquals(10L, ranges.start(1))
+        assertEquals(20L, ranges.end(1))
+        assertEquals(30L, ranges.start(2))
+        assertEquals(31L, ranges.end(2))
+    }
+
+    @Test
+    fun capTo_closesTheSmallestGaps() {
+        val random = Random(2)
+        repeat(500) {
+            val ranges = randomRanges(random)
+            ranges.sortAndMerge()
+            val merged = covered(ranges)
+            val mergedSize = ranges.size
+            val starts = LongArray(mergedSize) { ranges.start(it) }
+            val ends = LongArray(mergedSize) { ranges.end(it) }
+            val gaps = LongArray(mergedSize - 1) { starts[it + 1] - ends[it] }
+            gaps.sort()
+            val maxRanges = 1 + random.nextInt(6)
+
+            ranges.capTo(maxRanges)
+
+            assertEquals(Math.min(maxRanges, mergedSize), ranges.size)
+            assertSortedAndDisjoint(ranges)
+            val capped = covered(ranges)
+            for (key in merged.indices)
+                if (merged[key]) assertTrue(capped[key])
+            // The capped ranges start and end where the merged ones did, with only the smallest gaps read
+            for (i in 0 until ranges.size) {
+                assertTrue(starts.contains(ranges.start(i)))
+                assertTrue(ends.contains(ranges.end(i)))
+            }
+            val closedKeys = capped.count { it } - merged.count { it }
+            val smallestGaps = (0 until Math.max(0, mergedSize - maxRanges)).map { gaps[it] }.sum()
+            assertEquals(smallestGaps, closedKeys.toLong())
+        }
+    }
+
+    @Test
+    fun capTo_keepsRangesWithinTheLimit() {
+        val ranges = KeyRangeList(bitCount)
+        ranges.add(0, 1)
+        ranges.add(3, 4)
+        ranges.sortAndMerge()
+        ranges.capTo(2)
+        assertEquals(2, ranges.size)
+        ranges.capTo(1)
+        assertEquals(1, ranges.size)
+        assertEquals(0L, ranges.start(0))
+        assertEquals(4L, ranges.end(0))
+    }
+
+    @Test
+    fun closeGaps_mergesTheRangesAroundEveryClosedGap() {
+        val ranges = KeyRangeList(bitCount)
+        for (start in longArrayOf(0, 4, 8, 12))
+            ranges.add(start, start + 2)
+        ranges.closeGaps(booleanArrayOf(true, false, true))
+        assertEquals(2, ranges.size)
+        assertEquals(0L, ranges.start(0))
+        assertEquals(6L, ranges.end(0))
+        assertEquals(8L, ranges.start(1))
+        assertEquals(14L, ranges.end(1))
+    }
+
+    @Test
+    fun toQueries_convertsKeysToBase32Bounds() {
+        val ranges = KeyRangeList(bitCount)
+        ranges.add(1, 3)
+        ranges.add((1L shl bitCount) - 1, 1L shl bitCount)
+        val queries = ranges.toQueries().toList()
+        assertEquals(GeoHashQuery("01", "03"), queries[0])
+        // The range reaching the last key has no successor key
+        assertEquals(GeoHashQuery("zz", "~"), queries[1])
+    }
+}
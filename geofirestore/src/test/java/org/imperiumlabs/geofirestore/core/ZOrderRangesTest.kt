@@ -0,0 +1,75 @@
+package org.imperiumlabs.geofirestore.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class ZOrderRangesTest {
+
+    /*
+     * Assert that the ranges of a box hold each of its cells exactly once and nothing else
+     */
+    private fun assertExactBox(minRow: Long, maxRow: Long, minColumn: Long, maxColumn: Long, bitCount: Int) {
+        val ranges = KeyRangeList(bitCount)
+        ZOrderRanges.addBox(minRow, maxRow, minColumn, maxColumn, bitCount, ranges)
+        val expected = HashSet<Long>()
+        for (row in minRow..maxRow)
+            for (column in minColumn..maxColumn)
+                expected.add(GeoHash.interleaveIndices(row, column, bitCount))
+        var count = 0L
+        for (i in 0 until ranges.size) {
+            for (key in ranges.start(i) until ranges.end(i))
+                assertTrue("$key isn't in the box [$minRow, $maxRow] x [$minColumn, $maxColumn]", expected.contains(key))
+            count += ranges.end(i) - ranges.start(i)
+        }
+        assertEquals(expected.size.toLong(), count)
+    }
+
+    @Test
+    fun addBox_decomposesEveryBoxExactly() {
+        // Even and odd bit counts, the longitude getting the extra bit
+        for (bitCount in intArrayOf(2, 3, 5, 6, 7)) {
+            val rows = 1L shl (bitCount / 2)
+            val columns = 1L shl ((bitCount + 1) / 2)
+            for (minRow in 0 until rows)
+                for (maxRow in minRow until rows)
+                    for (minColumn in 0 until columns)
+                        for (maxColumn in minColumn until columns)
+                            assertExactBox(minRow, maxRow, minColumn, maxColumn, bitCount)
+        }
+    }
+
+    @Test
+    fun addBox_decomposesRandomBoxesExactly() {
+        val random = Random(4)
+        repeat(300) {
+            val bitCount = 12 + random.nextInt(5)
+            val rows = 1 shl (bitCount / 2)
+            val columns = 1 shl ((bitCount + 1) / 2)
+            val minRow = random.nextInt(rows).toLong()
+            val minColumn = random.nextInt(columns).toLong()
+            val maxRow = minRow + random.nextInt(Math.min(rows - minRow.toInt(), 20))
+            val maxColumn = minColumn + random.nextInt(Math.min(columns - minColumn.toInt(), 20))
+            assertExactBox(minRow, maxRow, minColumn, maxColumn, bitCount)
+        }
+    }
+
+    @Test
+    fun forEachCell_splitsARangeIntoAlignedCells() {
+        val random = Random(8)
+        val bitCount = 16
+        repeat(500) {
+            val start = random.nextInt(1 shl bitCount).toLong()
+            val end = start + 1 + random.nextInt((1 shl bitCount) - start.toInt())
+            var key = start
+            ZOrderRanges.forEachCell(start, end, bitCount) { bits, cellBits ->
+                val shift = bitCount - cellBits
+                // Each cell starts where the previous one ended and is aligned on its size
+                assertEquals(key, bits shl shift)
+                key += 1L shl shift
+            }
+            assertEquals(end, key)
+        }
+    }
+}
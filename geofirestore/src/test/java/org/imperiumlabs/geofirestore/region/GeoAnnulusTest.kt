@@ -0,0 +1,28 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+class GeoAnnulusTest {
+
+    @Test
+    fun relate_isConservative() {
+        val random = Random(59)
+        repeat(100) {
+            val center = GeoLocation(random.nextDouble() * 140 - 70, random.nextDouble() * 360 - 180)
+            val maxRadius = Math.pow(10.0, 3 + random.nextDouble() * 2.5)
+            RelateAssert.assertConservative(GeoAnnulus(center, maxRadius * random.nextDouble(), maxRadius), random)
+        }
+    }
+
+    @Test
+    fun relate_findsCellsInTheHoleDisjoint() {
+        val annulus = GeoAnnulus(GeoLocation(0.0, 0.0), 10000.0, 50000.0)
+        assertEquals(GeoRegion.Relation.DISJOINT, annulus.relate(-0.01, -0.01, 0.01, 0.01))
+        assertEquals(GeoRegion.Relation.INSIDE, annulus.relate(-0.01, 0.26, 0.01, 0.28))
+        assertEquals(GeoRegion.Relation.INTERSECTS, annulus.relate(-0.5, -0.5, 0.5, 0.5))
+        assertEquals(GeoRegion.Relation.DISJOINT, annulus.relate(1.0, 1.0, 2.0, 2.0))
+    }
+}
@@ -0,0 +1,40 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+class GeoBoundingBoxTest {
+
+    @Test
+    fun relate_isConservative() {
+        val random = Random(41)
+        repeat(100) {
+            val south = random.nextDouble() * 160 - 80
+            val west = random.nextDouble() * 360 - 180
+            val north = Math.min(90.0, south + random.nextDouble() * 20)
+            // Some of the boxes cross the antimeridian
+            var east = west + random.nextDouble() * 40
+            if (east > 180) east -= 360
+            RelateAssert.assertConservative(GeoBoundingBox(south, west, north, east), random)
+        }
+    }
+
+    @Test
+    fun relate_findsCellsInsideAcrossAndOutside() {
+        val box = GeoBoundingBox(10.0, 20.0, 30.0, 40.0)
+        assertEquals(GeoRegion.Relation.INSIDE, box.relate(15.0, 25.0, 20.0, 30.0))
+        assertEquals(GeoRegion.Relation.INTERSECTS, box.relate(5.0, 25.0, 15.0, 30.0))
+        assertEquals(GeoRegion.Relation.DISJOINT, box.relate(40.0, 25.0, 50.0, 30.0))
+        assertEquals(GeoRegion.Relation.DISJOINT, box.relate(15.0, 45.0, 20.0, 50.0))
+    }
+
+    @Test
+    fun relate_splitsABoxCrossingTheAntimeridian() {
+        val box = GeoBoundingBox(-10.0, 170.0, 10.0, -170.0)
+        assertEquals(GeoRegion.Relation.INSIDE, box.relate(-5.0, 175.0, 5.0, 180.0))
+        assertEquals(GeoRegion.Relation.INSIDE, box.relate(-5.0, -180.0, 5.0, -175.0))
+        assertEquals(GeoRegion.Relation.INTERSECTS, box.relate(-5.0, 165.0, 5.0, 175.0))
+        assertEquals(GeoRegion.Relation.DISJOINT, box.relate(-5.0, 0.0, 5.0, 10.0))
+    }
+}
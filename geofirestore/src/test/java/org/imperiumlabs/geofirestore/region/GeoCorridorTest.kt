@@ -0,0 +1,44 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.util.GeoUtils
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+class GeoCorridorTest {
+
+    /*
+     * A route of up to 5 points with steps of up to half a degree, some crossing the antimeridian
+     */
+    private fun randomCorridor(random: Random): GeoCorridor {
+        var latitude = random.nextDouble() * 120 - 60
+        var longitude = random.nextDouble() * 360 - 180
+        val route = ArrayList<GeoLocation>()
+        repeat(1 + random.nextInt(5)) {
+            route.add(GeoLocation(latitude, longitude))
+            latitude += random.nextDouble() - 0.5
+            longitude = GeoUtils.wrapLongitude(longitude + random.nextDouble() - 0.5)
+        }
+        return GeoCorridor(route, Math.pow(10.0, 2 + random.nextDouble() * 2.5))
+    }
+
+    @Test
+    fun relate_isConservative() {
+        val random = Random(47)
+        repeat(100) {
+            RelateAssert.assertConservative(randomCorridor(random), random)
+        }
+    }
+
+    @Test
+    fun relate_measuresCellsAgainstTheBufferAroundTheRoute() {
+        val corridor = GeoCorridor(listOf(GeoLocation(0.0, 0.0), GeoLocation(0.0, 1.0)), 10000.0)
+        assertEquals(GeoRegion.Relation.INSIDE, corridor.relate(-0.01, 0.45, 0.01, 0.55))
+        assertEquals(GeoRegion.Relation.INTERSECTS, corridor.relate(0.05, 0.45, 0.15, 0.55))
+        assertEquals(GeoRegion.Relation.DISJOINT, corridor.relate(1.0, 0.4, 2.0, 0.6))
+        // The buffer is rounded around the end of the route
+        assertEquals(GeoRegion.Relation.INSIDE, corridor.relate(-0.01, 1.04, 0.01, 1.06))
+        assertEquals(GeoRegion.Relation.DISJOINT, corridor.relate(-0.01, 1.14, 0.01, 1.16))
+    }
+}
@@ -0,0 +1,47 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+class GeoPolygonTest {
+
+    // A U opening to the north, its notch between the longitudes 10 and 20
+    private val u = GeoPolygon(listOf(
+            GeoLocation(0.0, 0.0), GeoLocation(30.0, 0.0), GeoLocation(30.0, 10.0), GeoLocation(10.0, 10.0),
+            GeoLocation(10.0, 20.0), GeoLocation(30.0, 20.0), GeoLocation(30.0, 30.0), GeoLocation(0.0, 30.0)))
+
+    /*
+     * A star shaped polygon around a center, simple but mostly concave
+     */
+    private fun randomPolygon(random: Random): GeoPolygon {
+        val latitude = random.nextDouble() * 120 - 60
+        val longitude = random.nextDouble() * 320 - 160
+        val size = random.nextDouble() * 10
+        val angles = DoubleArray(3 + random.nextInt(10)) { random.nextDouble() * 2 * Math.PI }.sorted()
+        return GeoPolygon(angles.map {
+            val distance = size * (0.3 + random.nextDouble() * 0.7)
+            GeoLocation(latitude + distance * Math.sin(it), longitude + distance * Math.cos(it))
+        })
+    }
+
+    @Test
+    fun relate_isConservative() {
+        val random = Random(43)
+        repeat(100) {
+            RelateAssert.assertConservative(randomPolygon(random), random)
+        }
+        RelateAssert.assertConservative(u, random, 2000)
+    }
+
+    @Test
+    fun relate_findsTheNotchOfAConcavePolygonDisjoint() {
+        assertEquals(GeoRegion.Relation.INSIDE, u.relate(2.0, 2.0, 5.0, 5.0))
+        assertEquals(GeoRegion.Relation.INSIDE, u.relate(15.0, 22.0, 25.0, 28.0))
+        assertEquals(GeoRegion.Relation.INTERSECTS, u.relate(5.0, 12.0, 15.0, 18.0))
+        // Inside the bounding box but not the polygon
+        assertEquals(GeoRegion.Relation.DISJOINT, u.relate(20.0, 12.0, 25.0, 18.0))
+        assertEquals(GeoRegion.Relation.DISJOINT, u.relate(40.0, 12.0, 45.0, 18.0))
+    }
+}
@@ -0,0 +1,47 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.imperiumlabs.geofirestore.GeoLocation
+import org.imperiumlabs.geofirestore.util.GeoUtils
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+class GeoUnionTest {
+
+    /*
+     * Up to 4 circles and boxes within 10 degrees of each other, some around the antimeridian
+     */
+    private fun randomUnion(random: Random): GeoUnion {
+        val latitude = random.nextDouble() * 120 - 60
+        val longitude = random.nextDouble() * 360 - 180
+        return GeoUnion(List(1 + random.nextInt(4)) {
+            val south = latitude + random.nextDouble() * 10
+            val west = GeoUtils.wrapLongitude(longitude + random.nextDouble() * 10)
+            if (random.nextBoolean())
+                GeoCircle(GeoLocation(south, west), Math.pow(10.0, 3 + random.nextDouble() * 2.5))
+            else
+                GeoBoundingBox(south, west, south + random.nextDouble() * 5, GeoUtils.wrapLongitude(west + random.nextDouble() * 5))
+        })
+    }
+
+    @Test
+    fun relate_isConservative() {
+        val random = Random(53)
+        repeat(100) {
+            RelateAssert.assertConservative(randomUnion(random), random)
+        }
+    }
+
+    @Test
+    fun relate_isInsideAsSoonAsInsideOneRegion() {
+        val union = GeoUnion(listOf(
+                GeoCircle(GeoLocation(0.0, 179.0), 100000.0),
+                GeoCircle(GeoLocation(0.0, -179.0), 100000.0)))
+        assertEquals(GeoRegion.Relation.INSIDE, union.relate(-0.1, 178.9, 0.1, 179.1))
+        assertEquals(GeoRegion.Relation.INSIDE, union.relate(-0.1, -179.1, 0.1, -178.9))
+        assertEquals(GeoRegion.Relation.INTERSECTS, union.relate(-1.0, 178.0, 1.0, 180.0))
+        // Between the circles, and far from both
+        assertEquals(GeoRegion.Relation.DISJOINT, union.relate(-0.1, 179.95, 0.1, 180.0))
+        assertEquals(GeoRegion.Relation.DISJOINT, union.relate(-0.1, 0.0, 0.1, 1.0))
+    }
+}
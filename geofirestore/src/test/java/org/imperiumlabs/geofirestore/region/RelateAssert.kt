@@ -0,0 +1,43 @@
+package org.imperiumlabs.geofirestore.region
+
+import org.imperiumlabs.geofirestore.util.GeoUtils
+import org.junit.Assert.assertEquals
+import java.util.Random
+
+/*
+ * Brute force checks of the relations of cells to a region
+ */
+internal object RelateAssert {
+
+    /*
+     * Assert that relate is conservative on cells of many sizes around a region: every location
+     * sampled in a cell found INSIDE is in the region, and none sampled in a cell found DISJOINT is
+     */
+    fun assertConservative(region: GeoRegion, random: Random, cells: Int = 500, samples: Int = 50) {
+        val latitudeSpan = Math.max(region.maxLatitude - region.minLatitude, 1e-6)
+        val longitudeSpan = Math.max(if (region.minLongitude <= region.maxLongitude) region.maxLongitude - region.minLongitude
+        else region.maxLongitude - region.minLongitude + 360, 1e-6)
+        repeat(cells) {
+            // Centers around the bounding box, from cells as large as the region down to 1/512 of it
+            val centerLatitude = region.minLatitude + (random.nextDouble() * 2 - 0.5) * latitudeSpan
+            val centerLongitude = GeoUtils.wrapLongitude(region.minLongitude + (random.nextDouble() * 2 - 0.5) * longitudeSpan)
+            val scale = 1.0 / (1 shl random.nextInt(10))
+            // Cells are clamped to valid coordinates so they never cross the antimeridian
+            val minLatitude = clamp(centerLatitude - scale * latitudeSpan / 2, -90.0, 90.0)
+            val maxLatitude = clamp(centerLatitude + scale * latitudeSpan / 2, -90.0, 90.0)
+            val minLongitude = clamp(centerLongitude - scale * longitudeSpan / 2, -180.0, 180.0)
+            val maxLongitude = clamp(centerLongitude + scale * longitudeSpan / 2, -180.0, 180.0)
+            val relation = region.relate(minLatitude, minLongitude, maxLatitude, maxLongitude)
+            if (relation != GeoRegion.Relation.INTERSECTS) {
+                repeat(samples) {
+                    val latitude = minLatitude + random.nextDouble() * (maxLatitude - minLatitude)
+                    val longitude = minLongitude + random.nextDouble() * (maxLongitude - minLongitude)
+                    assertEquals("[$latitude, $longitude] of the cell [$minLatitude, $minLongitude, $maxLatitude, $maxLongitude] " +
+                            "found $relation to $region", relation == GeoRegion.Relation.INSIDE, region.contains(latitude, longitude))
+                }
+            }
+        }
+    }
+
+    private fun clamp(value: Double, min: Double, max: Double) = Math.max(min, Math.min(max, value))
+}